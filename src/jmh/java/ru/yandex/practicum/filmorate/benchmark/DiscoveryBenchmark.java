@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.repository.GenreMask;
+import ru.yandex.practicum.filmorate.storage.FilmDiscoveryIndex;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscoveryBenchmark {
+    private static final long DRAMA_OR_THRILLER = GenreMask.bit(2) | GenreMask.bit(4);
+    private static final long PG_13_OR_R = (1L << 3) | (1L << 4);
+
+    @Benchmark
+    public List<Long> anyGenre(DiscoveryContext context) {
+        return context.index.discover(DRAMA_OR_THRILLER, false, FilmDiscoveryIndex.ANY_MPA, 0, 0, 10);
+    }
+
+    @Benchmark
+    public List<Long> allGenresWithMpaAndRate(DiscoveryContext context) {
+        return context.index.discover(DRAMA_OR_THRILLER, true, PG_13_OR_R, 50, 0, 10);
+    }
+
+    @Benchmark
+    public List<Long> singleYear(DiscoveryContext context) {
+        return context.index.discover(0, false, FilmDiscoveryIndex.ANY_MPA, 0, 1984, 100);
+    }
+}
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.FilmDiscoveryIndex;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+@State(Scope.Benchmark)
+public class DiscoveryContext {
+    @Param("1000000")
+    public int films;
+
+    @Param({"0", "65536"})
+    public int parallelThreshold;
+
+    FilmDiscoveryIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        index = new FilmDiscoveryIndex(null, parallelThreshold);
+        for (long id = 1; id <= films; id++) {
+            index.add(Film.builder()
+                    .id(id)
+                    .releaseDate(LocalDate.of(1950 + random.nextInt(70), 1, 1))
+                    .rate(random.nextInt(100))
+                    .mpa(Mpa.builder()
+                            .id(1L + random.nextInt(5))
+                            .build())
+                    .genres(List.of(Genre.builder()
+                                    .id(1L + random.nextInt(6))
+                                    .build(),
+                            Genre.builder()
+                                    .id(1L + random.nextInt(6))
+                                    .build()))
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmBenchmark {
+    @Benchmark
+    public Map<Long, Film> filmDbStorageGetAll(SeededContext context) {
+        return context.filmDbStorage.getAll();
+    }
+
+    @Benchmark
+    public Map<Long, Film> inMemoryFilmStorageGetAll(SeededContext context) {
+        return context.inMemoryFilmStorage.getAll();
+    }
+
+    @Benchmark
+    public List<Film> findMostPopular(SeededContext context) {
+        return context.filmService.findMostPopular(10, null, null, null);
+    }
+
+    @Benchmark
+    public List<Film> inMemoryFindMostPopular(SeededContext context) {
+        return context.inMemoryFilmStorage.getPopular(10);
+    }
+
+    @Benchmark
+    public void likeAndUnlike(SeededContext context) {
+        long filmId = context.randomFilmId();
+        context.filmService.like(filmId, context.benchmarkUserId);
+        context.filmService.unlike(filmId, context.benchmarkUserId);
+    }
+
+    @Benchmark
+    public void inMemoryLikeAndUnlike(SeededContext context) {
+        long filmId = context.randomFilmId();
+        context.inMemoryFilmStorage.addLike(filmId, context.benchmarkUserId);
+        context.inMemoryFilmStorage.removeLike(filmId, context.benchmarkUserId);
+    }
+
+    @Benchmark
+    public List<Film> findRecommendedFilms(SeededContext context) {
+        return context.filmService.findRecommendedFilms(context.randomUserId(), 10);
+    }
+
+    @Benchmark
+    public List<Long> likesIndexRecommend(SeededContext context) {
+        return context.likesIndex.recommend(context.randomUserId(), 10);
+    }
+
+    @Benchmark
+    public List<Film> searchFilms(SeededContext context) {
+        return context.filmService.search("city", "title,description", 10);
+    }
+
+    @Benchmark
+    public List<Long> searchIndexSearch(SeededContext context) {
+        return context.searchIndex.search("город", true, true, 10);
+    }
+
+    @Benchmark
+    public List<Film> discoverFilms(SeededContext context) {
+        return context.filmService.discover("any:2,4", List.of(3L, 4L), null, null, 10);
+    }
+}
@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.boot.WebApplicationType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class HttpContext extends SeededContext {
+    @Param({"blocking", "async"})
+    public String executionMode;
+
+    @Param("4")
+    public int tomcatThreads;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private String baseUrl;
+
+    @Override
+    void configure(List<String> args) {
+        args.add("--server.port=0");
+        args.add("--server.tomcat.threads.max=" + tomcatThreads);
+        args.add("--server.tomcat.threads.min-spare=" + tomcatThreads);
+        args.add("--filmorate.execution.mode=" + executionMode);
+        args.add("--filmorate.metrics.n-plus-one-threshold=" + Integer.MAX_VALUE);
+    }
+
+    @Override
+    WebApplicationType webApplicationType() {
+        return WebApplicationType.SERVLET;
+    }
+
+    @Setup(Level.Iteration)
+    public void resolvePort() {
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+    }
+
+    int get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(60))
+                .GET()
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
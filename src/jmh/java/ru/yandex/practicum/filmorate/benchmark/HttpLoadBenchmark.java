@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class HttpLoadBenchmark {
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public int popularFilms(HttpContext context) throws IOException, InterruptedException {
+        return context.get("/films/popular?count=100");
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public int genres(HttpContext context) throws IOException, InterruptedException {
+        return context.get("/genres");
+    }
+}
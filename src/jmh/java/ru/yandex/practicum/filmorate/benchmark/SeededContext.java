@@ -0,0 +1,262 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.repository.GenreRepository;
+import ru.yandex.practicum.filmorate.repository.LikesRepository;
+import ru.yandex.practicum.filmorate.repository.MpaRepository;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDiscoveryIndex;
+import ru.yandex.practicum.filmorate.storage.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.UserDbStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@State(Scope.Benchmark)
+public class SeededContext {
+    private static final int BATCH_SIZE = 10_000;
+    private static final List<String> TITLE_WORDS = List.of("night", "city", "river", "winter", "shadow",
+            "ночь", "город", "река", "зима", "тень");
+
+    @Param("1000")
+    public int films;
+
+    @Param("1000")
+    public int users;
+
+    @Param("20")
+    public int friendsPerUser;
+
+    @Param("20")
+    public int likesPerUser;
+
+    @Param("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=64")
+    public String datasourceUrl;
+
+    @Param("mem")
+    public String h2Mode;
+
+    @Param("0")
+    public int stallMs;
+
+    ConfigurableApplicationContext context;
+    FilmDbStorage filmDbStorage;
+    UserDbStorage userDbStorage;
+    InMemoryFilmStorage inMemoryFilmStorage;
+    InMemoryUserStorage inMemoryUserStorage;
+    FriendGraph friendGraph;
+    LikesIndex likesIndex;
+    FilmSearchIndex searchIndex;
+    FilmDiscoveryIndex discoveryIndex;
+    FilmService filmService;
+    UserService userService;
+    long benchmarkUserId;
+    Path h2Directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<String> args = new ArrayList<>(List.of("--logging.level.root=warn"));
+        if ("file".equals(h2Mode)) {
+            h2Directory = Files.createTempDirectory("filmorate-jmh");
+            args.add("--spring.profiles.active=h2file");
+            args.add("--filmorate.h2.path=" + h2Directory.resolve("benchmark"));
+        } else {
+            args.add("--spring.datasource.url=" + datasourceUrl);
+        }
+        if (stallMs > 0) {
+            args.add("--spring.main.sources=" + StallingDataSource.class.getName());
+            args.add("--filmorate.benchmark.stall-ms=" + stallMs);
+        }
+        configure(args);
+
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(webApplicationType())
+                .run(args.toArray(new String[0]));
+
+        filmDbStorage = context.getBean(FilmDbStorage.class);
+        userDbStorage = context.getBean(UserDbStorage.class);
+        inMemoryUserStorage = new InMemoryUserStorage();
+        inMemoryFilmStorage = new InMemoryFilmStorage(inMemoryUserStorage, context.getBean(GenreRepository.class),
+                context.getBean(MpaRepository.class), new LikesIndex(context.getBean(LikesRepository.class)));
+        filmService = context.getBean(FilmService.class);
+        userService = context.getBean(UserService.class);
+
+        friendGraph = context.getBean(FriendGraph.class);
+        likesIndex = context.getBean(LikesIndex.class);
+        searchIndex = context.getBean(FilmSearchIndex.class);
+        discoveryIndex = context.getBean(FilmDiscoveryIndex.class);
+
+        seed(new Random(42));
+        friendGraph.reload();
+        likesIndex.reload();
+        searchIndex.reload();
+        discoveryIndex.reload();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        if (h2Directory != null) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(h2Directory)) {
+                files = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    void configure(List<String> args) {
+    }
+
+    WebApplicationType webApplicationType() {
+        return WebApplicationType.NONE;
+    }
+
+    long randomFilmId() {
+        return ThreadLocalRandom.current().nextLong(1, films + 1);
+    }
+
+    long randomUserId() {
+        return ThreadLocalRandom.current().nextLong(1, users + 1);
+    }
+
+    private void seed(Random random) {
+        inBatches(films, batch -> {
+            List<Film> dbFilms = new ArrayList<>();
+            List<Film> memoryFilms = new ArrayList<>();
+            for (int i = 0; i < batch; i++) {
+                dbFilms.add(buildFilm(random));
+                memoryFilms.add(dbFilms.get(i).toBuilder().build());
+            }
+            filmDbStorage.createAll(dbFilms);
+            inMemoryFilmStorage.createAll(memoryFilms);
+        });
+
+        List<Set<Long>> friends = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            Set<Long> userFriends = new LinkedHashSet<>();
+            for (int j = 0; j < Math.min(friendsPerUser, users - 1); j++) {
+                long friendId = 1 + random.nextInt(users);
+                if (friendId != i + 1) {
+                    userFriends.add(friendId);
+                }
+            }
+            friends.add(userFriends);
+        }
+
+        int[] created = new int[1];
+        inBatches(users, batch -> {
+            List<User> dbUsers = new ArrayList<>();
+            List<User> memoryUsers = new ArrayList<>();
+            for (int i = 0; i < batch; i++) {
+                dbUsers.add(buildUser(created[0] + i));
+                memoryUsers.add(buildUser(created[0] + i));
+            }
+            created[0] += batch;
+            userDbStorage.createAll(dbUsers);
+            inMemoryUserStorage.createAll(memoryUsers);
+        });
+
+        List<Friendship> friendships = new ArrayList<>();
+        List<Like> likes = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            for (Long friendId : friends.get(i)) {
+                friendships.add(Friendship.builder()
+                        .id(i + 1L)
+                        .friendId(friendId)
+                        .status(Friendship.UNCONFIRMED_STATUS)
+                        .build());
+            }
+            for (int j = 0; j < likesPerUser; j++) {
+                likes.add(Like.builder()
+                        .userId(i + 1L)
+                        .filmId(1L + random.nextInt(films))
+                        .build());
+            }
+            if (friendships.size() >= BATCH_SIZE || likes.size() >= BATCH_SIZE) {
+                userDbStorage.addFriends(friendships);
+                inMemoryUserStorage.addFriends(friendships);
+                filmDbStorage.addLikes(likes);
+                inMemoryFilmStorage.addLikes(likes);
+                friendships.clear();
+                likes.clear();
+            }
+        }
+        userDbStorage.addFriends(friendships);
+        inMemoryUserStorage.addFriends(friendships);
+        filmDbStorage.addLikes(likes);
+        inMemoryFilmStorage.addLikes(likes);
+
+        benchmarkUserId = userDbStorage.create(buildUser(users)).getId();
+        inMemoryUserStorage.create(buildUser(users));
+    }
+
+    private void inBatches(int total, Consumer<Integer> action) {
+        for (int done = 0; done < total; done += BATCH_SIZE) {
+            action.accept(Math.min(BATCH_SIZE, total - done));
+        }
+    }
+
+    private Film buildFilm(Random random) {
+        return Film.builder()
+                .name(TITLE_WORDS.get(random.nextInt(TITLE_WORDS.size())) + " " +
+                        TITLE_WORDS.get(random.nextInt(TITLE_WORDS.size())) + " " + random.nextInt())
+                .description("Benchmark film")
+                .releaseDate(LocalDate.of(1950 + random.nextInt(70), 1 + random.nextInt(12), 1))
+                .duration(60 + random.nextInt(120))
+                .mpa(Mpa.builder()
+                        .id(1L + random.nextInt(5))
+                        .build())
+                .genres(List.of(Genre.builder()
+                        .id(1L + random.nextInt(6))
+                        .build()))
+                .build();
+    }
+
+    private User buildUser(int number) {
+        return User.builder()
+                .email("user" + number + "@mail.ru")
+                .login("user" + number)
+                .name("User " + number)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .friends(new HashSet<>())
+                .likedFilms(new HashSet<>())
+                .build();
+    }
+}
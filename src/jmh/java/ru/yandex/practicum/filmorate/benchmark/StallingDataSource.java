@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public class StallingDataSource implements BeanPostProcessor {
+    private final long stallMs;
+
+    public StallingDataSource(@Value("${filmorate.benchmark.stall-ms:0}") long stallMs) {
+        this.stallMs = stallMs;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource) || stallMs <= 0) {
+            return bean;
+        }
+
+        return new DelegatingDataSource((DataSource) bean) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                Connection connection = super.getConnection();
+                try {
+                    Thread.sleep(stallMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return connection;
+            }
+        };
+    }
+}
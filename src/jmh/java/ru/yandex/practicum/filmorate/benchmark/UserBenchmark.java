@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBenchmark {
+    @Benchmark
+    public List<User> findFriends(SeededContext context) {
+        return context.userService.findFriends(context.randomUserId());
+    }
+
+    @Benchmark
+    public List<User> inMemoryFindFriends(SeededContext context) {
+        return context.inMemoryUserStorage.getFriends(context.randomUserId());
+    }
+
+    @Benchmark
+    public List<User> findCommonFriends(SeededContext context) {
+        return context.userService.findCommonFriends(context.randomUserId(), context.randomUserId());
+    }
+
+    @Benchmark
+    public List<User> inMemoryFindCommonFriends(SeededContext context) {
+        return context.inMemoryUserStorage.getCommonFriends(context.randomUserId(), context.randomUserId());
+    }
+
+    @Benchmark
+    public List<User> findRecommendedFriends(SeededContext context) {
+        return context.userService.findRecommendedFriends(context.randomUserId(), 10);
+    }
+
+    @Benchmark
+    public List<Long> friendGraphRecommend(SeededContext context) {
+        return context.friendGraph.recommend(context.randomUserId(), 10);
+    }
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+@Slf4j
+public class Bulkhead {
+    private final String name;
+    private final ExecutorService executor;
+    private final QueryCounter queryCounter;
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final Semaphore running;
+    private final Counter rejected;
+
+    public Bulkhead(String name, ExecutorService executor, int threads, int queue, QueryCounter queryCounter,
+                    MeterRegistry registry) {
+        this.name = name;
+        this.executor = executor;
+        this.queryCounter = queryCounter;
+        this.maxConcurrent = threads + queue;
+        this.permits = new Semaphore(maxConcurrent);
+        this.running = new Semaphore(threads);
+        this.rejected = Counter.builder("filmorate.bulkhead.rejected")
+                .tag("bulkhead", name)
+                .register(registry);
+        Gauge.builder("filmorate.bulkhead.active", permits, available -> maxConcurrent - available.availablePermits())
+                .tag("bulkhead", name)
+                .register(registry);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(task.get());
+        }
+
+        if (!permits.tryAcquire()) {
+            return reject();
+        }
+
+        try {
+            return CompletableFuture.supplyAsync(queryCounter.propagate(limited(task)), executor)
+                    .whenComplete((result, e) -> permits.release());
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            return reject();
+        }
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private <T> CompletableFuture<T> reject() {
+        rejected.increment();
+        log.warn("Пул " + name + " переполнен: выполняется " + maxConcurrent + " запросов");
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new ServiceUnavailableException("Сервер перегружен, повторите запрос позже!"));
+        return future;
+    }
+
+    private <T> Supplier<T> limited(Supplier<T> task) {
+        return () -> {
+            running.acquireUninterruptibly();
+            try {
+                return task.get();
+            } finally {
+                running.release();
+            }
+        };
+    }
+}
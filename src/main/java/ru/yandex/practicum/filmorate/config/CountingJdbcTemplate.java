@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class CountingJdbcTemplate extends JdbcTemplate {
+    private final QueryCounter queryCounter;
+
+    public CountingJdbcTemplate(JdbcTemplate jdbcTemplate, QueryCounter queryCounter) {
+        super(jdbcTemplate.getDataSource(), jdbcTemplate.isLazyInit());
+        setExceptionTranslator(jdbcTemplate.getExceptionTranslator());
+        setIgnoreWarnings(jdbcTemplate.isIgnoreWarnings());
+        setFetchSize(jdbcTemplate.getFetchSize());
+        setMaxRows(jdbcTemplate.getMaxRows());
+        setQueryTimeout(jdbcTemplate.getQueryTimeout());
+        setSkipResultsProcessing(jdbcTemplate.isSkipResultsProcessing());
+        setSkipUndeclaredResults(jdbcTemplate.isSkipUndeclaredResults());
+        setResultsMapCaseInsensitive(jdbcTemplate.isResultsMapCaseInsensitive());
+        this.queryCounter = queryCounter;
+    }
+
+    @Override
+    public <T> T execute(ConnectionCallback<T> action) throws DataAccessException {
+        queryCounter.increment();
+        return super.execute(action);
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        queryCounter.increment();
+        super.applyStatementSettings(stmt);
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Configuration
+public class ExecutionConfiguration {
+    private final String mode;
+    private final QueryCounter queryCounter;
+    private final MeterRegistry registry;
+
+    public ExecutionConfiguration(@Value("${filmorate.execution.mode:blocking}") String mode,
+                                  QueryCounter queryCounter, MeterRegistry registry) {
+        this.mode = mode;
+        this.queryCounter = queryCounter;
+        this.registry = registry;
+    }
+
+    @Bean
+    public Bulkhead heavyBulkhead(@Value("${filmorate.execution.heavy.threads:2}") int threads,
+                                  @Value("${filmorate.execution.heavy.queue:100}") int queue) {
+        return bulkhead("heavy", threads, queue);
+    }
+
+    @Bean
+    public Bulkhead lightBulkhead(@Value("${filmorate.execution.light.threads:4}") int threads,
+                                  @Value("${filmorate.execution.light.queue:200}") int queue) {
+        return bulkhead("light", threads, queue);
+    }
+
+    private Bulkhead bulkhead(String name, int threads, int queue) {
+        ExecutorService executor;
+        switch (mode) {
+            case "blocking":
+                executor = null;
+                break;
+            case "virtual":
+                executor = virtualExecutor(name, threads);
+                break;
+            case "async":
+                executor = platformExecutor(name, threads);
+                break;
+            default:
+                throw new IllegalStateException("Неизвестный режим выполнения запросов: " + mode);
+        }
+
+        log.info("Пул " + name + ": режим " + mode + ", потоков " + threads + ", очередь " + queue);
+        return new Bulkhead(name, executor, threads, queue, queryCounter, registry);
+    }
+
+    private ExecutorService platformExecutor(String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("filmorate-" + name + "-"));
+        new ExecutorServiceMetrics(executor, "filmorate." + name, Tags.empty()).bindTo(registry);
+        return executor;
+    }
+
+    private ExecutorService virtualExecutor(String name, int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Виртуальные потоки недоступны на Java " + Runtime.version().feature() +
+                    ", пул " + name + " использует обычные потоки");
+            return platformExecutor(name, threads);
+        }
+    }
+}
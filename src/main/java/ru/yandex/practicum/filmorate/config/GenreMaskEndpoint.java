@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.repository.FilmsRepository;
+
+import java.util.Map;
+
+@Slf4j
+@Component
+@Endpoint(id = "genremask")
+public class GenreMaskEndpoint {
+    private final FilmsRepository filmsRepository;
+
+    public GenreMaskEndpoint(FilmsRepository filmsRepository) {
+        this.filmsRepository = filmsRepository;
+    }
+
+    @ReadOperation
+    public Map<String, Integer> check() {
+        return Map.of("inconsistent", filmsRepository.countInconsistentGenreMasks());
+    }
+
+    @WriteOperation
+    public Map<String, Integer> rebuild() {
+        int rebuilt = filmsRepository.rebuildGenreMasks();
+        log.info("Маски жанров пересобраны у фильмов: " + rebuilt);
+        return Map.of("rebuilt", rebuilt);
+    }
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+public class HikariPoolSizer implements BeanPostProcessor {
+    private final int cpuCores;
+    private final int effectiveSpindles;
+    private final int configuredPoolSize;
+
+    public HikariPoolSizer(@Value("${filmorate.datasource.cpu-cores:0}") int cpuCores,
+                           @Value("${filmorate.datasource.effective-spindles:1}") int effectiveSpindles,
+                           @Value("${spring.datasource.hikari.maximum-pool-size:0}") int configuredPoolSize) {
+        this.cpuCores = cpuCores > 0 ? cpuCores : Runtime.getRuntime().availableProcessors();
+        this.effectiveSpindles = effectiveSpindles;
+        this.configuredPoolSize = configuredPoolSize;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource && configuredPoolSize <= 0) {
+            int poolSize = cpuCores * 2 + effectiveSpindles;
+            HikariDataSource dataSource = (HikariDataSource) bean;
+            dataSource.setMaximumPoolSize(poolSize);
+            log.info("Размер пула соединений: " + poolSize + " (ядер " + cpuCores + ", дисков " + effectiveSpindles +
+                    ")");
+        }
+        return bean;
+    }
+}
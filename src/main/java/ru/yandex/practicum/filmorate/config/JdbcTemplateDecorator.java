@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class JdbcTemplateDecorator implements BeanPostProcessor {
+    private final ObjectProvider<QueryCounter> queryCounter;
+
+    public JdbcTemplateDecorator(ObjectProvider<QueryCounter> queryCounter) {
+        this.queryCounter = queryCounter;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof JdbcTemplate && !(bean instanceof CountingJdbcTemplate)) {
+            return new CountingJdbcTemplate((JdbcTemplate) bean, queryCounter.getObject());
+        }
+        return bean;
+    }
+}
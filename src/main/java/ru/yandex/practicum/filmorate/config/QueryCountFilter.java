@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.function.IntSupplier;
+
+@Slf4j
+@Component
+public class QueryCountFilter extends OncePerRequestFilter {
+    private final QueryCounter queryCounter;
+    private final MeterRegistry registry;
+    private final int threshold;
+
+    public QueryCountFilter(QueryCounter queryCounter, MeterRegistry registry,
+                            @Value("${filmorate.metrics.n-plus-one-threshold:20}") int threshold) {
+        this.queryCounter = queryCounter;
+        this.registry = registry;
+        this.threshold = threshold;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        IntSupplier queries = queryCounter.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            queryCounter.stop();
+        }
+
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    record(request, response, queries.getAsInt());
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            record(request, response, queries.getAsInt());
+        }
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, int queries) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+
+        DistributionSummary.builder("filmorate.http.queries")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .register(registry)
+                .record(queries);
+
+        if (queries > threshold) {
+            log.warn("Возможна проблема N+1: " + request.getMethod() + " " + uri + " выполнил " + queries +
+                    " SQL-запросов (порог " + threshold + ")");
+            Counter.builder("filmorate.http.n_plus_one")
+                    .tag("method", request.getMethod())
+                    .tag("uri", uri)
+                    .register(registry)
+                    .increment();
+        }
+
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Counter.builder("filmorate.http.conditional")
+                    .tag("uri", uri)
+                    .tag("result", response.getStatus() == HttpStatus.NOT_MODIFIED.value() ? "hit" : "miss")
+                    .register(registry)
+                    .increment();
+        }
+    }
+}
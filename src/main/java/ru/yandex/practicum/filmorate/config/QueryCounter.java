@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+@Component
+public class QueryCounter {
+    private final ThreadLocal<AtomicInteger> current = new ThreadLocal<>();
+    private final Counter statements;
+
+    public QueryCounter(MeterRegistry registry) {
+        this.statements = Counter.builder("filmorate.jdbc.statements")
+                .register(registry);
+    }
+
+    public IntSupplier start() {
+        AtomicInteger count = new AtomicInteger();
+        current.set(count);
+        return count::get;
+    }
+
+    public int stop() {
+        AtomicInteger count = current.get();
+        current.remove();
+        return count == null ? 0 : count.get();
+    }
+
+    public <T> Supplier<T> propagate(Supplier<T> task) {
+        AtomicInteger count = current.get();
+        if (count == null) {
+            return task;
+        }
+
+        return () -> {
+            AtomicInteger previous = current.get();
+            current.set(count);
+            try {
+                return task.get();
+            } finally {
+                if (previous == null) {
+                    current.remove();
+                } else {
+                    current.set(previous);
+                }
+            }
+        };
+    }
+
+    void increment() {
+        statements.increment();
+        AtomicInteger count = current.get();
+        if (count != null) {
+            count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Repository;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Aspect
+@Component
+@ConditionalOnProperty(name = "filmorate.metrics.timing", havingValue = "true", matchIfMissing = true)
+public class TimingAspect {
+    private final MeterRegistry registry;
+    private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+    public TimingAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("(@within(org.springframework.stereotype.Repository) || @within(org.springframework.stereotype.Service))" +
+            " && !within(ru.yandex.practicum.filmorate.repository.GenreRepository)" +
+            " && !within(ru.yandex.practicum.filmorate.repository.MpaRepository)")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer timer = timers.computeIfAbsent(((MethodSignature) joinPoint.getSignature()).getMethod(), this::timer);
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(Method method) {
+        Class<?> type = method.getDeclaringClass();
+        String parameters = Arrays.stream(method.getParameterTypes())
+                .map(Class::getSimpleName)
+                .collect(Collectors.joining(", "));
+
+        return Timer.builder(type.isAnnotationPresent(Repository.class) ? "filmorate.repository" : "filmorate.service")
+                .tag("class", type.getSimpleName())
+                .tag("method", method.getName() + "(" + parameters + ")")
+                .register(registry);
+    }
+}
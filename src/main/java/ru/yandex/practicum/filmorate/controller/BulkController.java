@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.service.BulkService;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+public class BulkController {
+    private final BulkService bulkService;
+
+    @PostMapping("/films/bulk")
+    private ImportResult importFilms(InputStream body) throws IOException {
+        return bulkService.importFilms(body);
+    }
+
+    @PostMapping("/users/bulk")
+    private ImportResult importUsers(InputStream body) throws IOException {
+        return bulkService.importUsers(body);
+    }
+
+    @PostMapping("/likes/bulk")
+    private ImportResult importLikes(InputStream body) throws IOException {
+        return bulkService.importLikes(body);
+    }
+
+    @PostMapping("/friends/bulk")
+    private ImportResult importFriends(InputStream body) throws IOException {
+        return bulkService.importFriends(body);
+    }
+}
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.repository.DictionaryVersion;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@Component
+public class DictionaryResponder {
+    private final DictionaryVersion dictionaryVersion;
+    private final CacheControl cacheControl;
+
+    public DictionaryResponder(DictionaryVersion dictionaryVersion,
+                               @Value("${filmorate.cache.dictionary-max-age-seconds:3600}") long maxAge) {
+        this.dictionaryVersion = dictionaryVersion;
+        this.cacheControl = CacheControl.maxAge(maxAge, TimeUnit.SECONDS).cachePublic();
+    }
+
+    public <T> ResponseEntity<T> respond(Supplier<T> body) {
+        long version = dictionaryVersion.get();
+
+        return ResponseEntity.ok()
+                .cacheControl(cacheControl)
+                .eTag(String.valueOf(version))
+                .lastModified(version)
+                .body(body.get());
+    }
+}
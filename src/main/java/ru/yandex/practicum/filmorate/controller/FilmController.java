@@ -2,8 +2,12 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.config.Bulkhead;
 import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
@@ -13,6 +17,7 @@ import ru.yandex.practicum.filmorate.service.FilmService;
 import javax.validation.Valid;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -20,6 +25,9 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FilmController {
     private final FilmService filmService;
+    private final JsonArrayStreamer jsonArrayStreamer;
+    private final Bulkhead heavyBulkhead;
+    private final Bulkhead lightBulkhead;
 
     @PostMapping
     private Film create(@Valid @RequestBody Film film, BindingResult errors) throws ValidationException {
@@ -32,12 +40,44 @@ public class FilmController {
     }
 
     @GetMapping
-    private Collection<Film> findAll() {
-        return filmService.findAll();
+    private CompletableFuture<Collection<Film>> findAll(@RequestParam(name = "after", required = false) Long after,
+                                                        @RequestParam(name = "limit", required = false) Integer limit)
+            throws ValidationException {
+        if (after == null && limit == null) {
+            return heavyBulkhead.submit(filmService::findAll);
+        }
+        return lightBulkhead.submit(() -> filmService.findPage(after, limit));
+    }
+
+    @GetMapping(params = "stream=true")
+    private ResponseEntity<StreamingResponseBody> streamAll() {
+        return jsonArrayStreamer.stream(filmService::streamAll);
+    }
+
+    @GetMapping("/search")
+    private CompletableFuture<List<Film>> search(@RequestParam(name = "query") String query,
+                                                 @RequestParam(name = "by", defaultValue = "title,description")
+                                                 String by,
+                                                 @RequestParam(name = "count", defaultValue = "10") int count)
+            throws ValidationException {
+        return heavyBulkhead.submit(() -> filmService.search(query, by, count));
+    }
+
+    @GetMapping("/discover")
+    private CompletableFuture<List<Film>> discover(@RequestParam(name = "genres", required = false) String genres,
+                                                   @RequestParam(name = "mpa", required = false) List<Long> mpa,
+                                                   @RequestParam(name = "minRate", required = false) Integer minRate,
+                                                   @RequestParam(name = "year", required = false) Integer year,
+                                                   @RequestParam(name = "count", defaultValue = "10") int count)
+            throws ValidationException {
+        return lightBulkhead.submit(() -> filmService.discover(genres, mpa, minRate, year, count));
     }
 
     @GetMapping("/{id}")
-    private Film find(@PathVariable(name = "id") Long id) throws FilmNotFoundException {
+    private Film find(@PathVariable(name = "id") Long id, WebRequest request) throws FilmNotFoundException {
+        if (request.checkNotModified(filmService.findETag(id))) {
+            return null;
+        }
         return filmService.find(id);
     }
 
@@ -54,7 +94,11 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    private List<Film> findMostPopular(@RequestParam(name = "count", defaultValue = "10") int count) {
-        return filmService.findMostPopular(count);
+    private CompletableFuture<List<Film>> findMostPopular(@RequestParam(name = "count", defaultValue = "10") int count,
+                                                          @RequestParam(name = "genreId", required = false)
+                                                          Long genreId,
+                                                          @RequestParam(name = "year", required = false) Integer year,
+                                                          @RequestParam(name = "mpaId", required = false) Long mpaId) {
+        return heavyBulkhead.submit(() -> filmService.findMostPopular(count, genreId, year, mpaId));
     }
 }
@@ -2,15 +2,18 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.config.Bulkhead;
 import ru.yandex.practicum.filmorate.exception.GenreNotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -18,14 +21,17 @@ import java.util.List;
 @RequiredArgsConstructor
 public class GenreController {
     private final FilmService filmService;
+    private final DictionaryResponder dictionaryResponder;
+    private final Bulkhead lightBulkhead;
 
     @GetMapping
-    private List<Genre> findAllGenres() {
-        return filmService.findAllGenres();
+    private CompletableFuture<ResponseEntity<List<Genre>>> findAllGenres() {
+        return lightBulkhead.submit(() -> dictionaryResponder.respond(filmService::findAllGenres));
     }
 
     @GetMapping("/{id}")
-    private Genre findGenre(@PathVariable(name = "id") Long id) throws GenreNotFoundException {
-        return filmService.findGenre(id);
+    private CompletableFuture<ResponseEntity<Genre>> findGenre(@PathVariable(name = "id") Long id)
+            throws GenreNotFoundException {
+        return lightBulkhead.submit(() -> dictionaryResponder.respond(() -> filmService.findGenre(id)));
     }
 }
@@ -2,15 +2,18 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.config.Bulkhead;
 import ru.yandex.practicum.filmorate.exception.MpaNotFoundException;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -18,14 +21,17 @@ import java.util.List;
 @RequiredArgsConstructor
 public class MpaController {
     private final FilmService filmService;
+    private final DictionaryResponder dictionaryResponder;
+    private final Bulkhead lightBulkhead;
 
     @GetMapping
-    private List<Mpa> findAllMpa() {
-        return filmService.findAllMpa();
+    private CompletableFuture<ResponseEntity<List<Mpa>>> findAllMpa() {
+        return lightBulkhead.submit(() -> dictionaryResponder.respond(filmService::findAllMpa));
     }
 
     @GetMapping("/{id}")
-    private Mpa findMpa(@PathVariable(name = "id") Long id) throws MpaNotFoundException {
-        return filmService.findMpa(id);
+    private CompletableFuture<ResponseEntity<Mpa>> findMpa(@PathVariable(name = "id") Long id)
+            throws MpaNotFoundException {
+        return lightBulkhead.submit(() -> dictionaryResponder.respond(() -> filmService.findMpa(id)));
     }
 }
@@ -2,6 +2,8 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -11,15 +13,24 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.config.Bulkhead;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -27,6 +38,10 @@ import java.util.List;
 @RequiredArgsConstructor
 public class UserController {
     private final UserService userService;
+    private final FilmService filmService;
+    private final JsonArrayStreamer jsonArrayStreamer;
+    private final Bulkhead heavyBulkhead;
+    private final Bulkhead lightBulkhead;
 
     @PostMapping
     private User create(@Valid @RequestBody User user, BindingResult errors) throws ValidationException {
@@ -40,12 +55,25 @@ public class UserController {
     }
 
     @GetMapping
-    private Collection<User> findAll() {
-        return userService.findAll();
+    private CompletableFuture<Collection<User>> findAll(@RequestParam(name = "after", required = false) Long after,
+                                                        @RequestParam(name = "limit", required = false) Integer limit)
+            throws ValidationException {
+        if (after == null && limit == null) {
+            return heavyBulkhead.submit(userService::findAll);
+        }
+        return lightBulkhead.submit(() -> userService.findPage(after, limit));
+    }
+
+    @GetMapping(params = "stream=true")
+    private ResponseEntity<StreamingResponseBody> streamAll() {
+        return jsonArrayStreamer.stream(userService::streamAll);
     }
 
     @GetMapping("/{id}")
-    private User find(@PathVariable(name = "id") Long id) throws UserNotFoundException {
+    private User find(@PathVariable(name = "id") Long id, WebRequest request) throws UserNotFoundException {
+        if (request.checkNotModified(userService.findETag(id))) {
+            return null;
+        }
         return userService.find(id);
     }
 
@@ -63,7 +91,7 @@ public class UserController {
 
     @GetMapping("/{id}/friends")
     private List<User> findFriends(@PathVariable(name = "id") Long id) throws UserNotFoundException {
-        return new ArrayList<>(userService.findFriends(id));
+        return userService.findFriends(id);
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
@@ -71,4 +99,35 @@ public class UserController {
                                          @PathVariable("otherId") Long otherId) throws UserNotFoundException {
         return userService.findCommonFriends(id, otherId);
     }
+
+    @GetMapping("/{id}/feed")
+    private List<Event> findFeed(@PathVariable(name = "id") Long id,
+                                 @RequestParam(name = "after", required = false) Long after,
+                                 @RequestParam(name = "limit", required = false) Integer limit)
+            throws UserNotFoundException, ValidationException {
+        return userService.findFeed(id, after, limit);
+    }
+
+    @GetMapping(value = "/{id}/feed/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    private SseEmitter streamFeed(@PathVariable(name = "id") Long id,
+                                  @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId)
+            throws UserNotFoundException {
+        return userService.subscribeToFeed(id, lastEventId);
+    }
+
+    @GetMapping("/{id}/recommendations/friends")
+    private CompletableFuture<List<User>> findRecommendedFriends(@PathVariable(name = "id") Long id,
+                                                                 @RequestParam(name = "count", defaultValue = "10")
+                                                                 int count)
+            throws UserNotFoundException, ValidationException {
+        return heavyBulkhead.submit(() -> userService.findRecommendedFriends(id, count));
+    }
+
+    @GetMapping("/{id}/recommendations/films")
+    private CompletableFuture<List<Film>> findRecommendedFilms(@PathVariable(name = "id") Long id,
+                                                               @RequestParam(name = "count", defaultValue = "10")
+                                                               int count)
+            throws UserNotFoundException {
+        return heavyBulkhead.submit(() -> filmService.findRecommendedFilms(id, count));
+    }
 }
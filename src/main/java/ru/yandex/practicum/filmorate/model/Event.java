@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class Event {
+    private Long eventId;
+    private Long userId;
+    private Long entityId;
+    private EventType eventType;
+    private Operation operation;
+    private Long timestamp;
+
+    public enum EventType {
+        LIKE,
+        FRIEND
+    }
+
+    public enum Operation {
+        ADD,
+        REMOVE
+    }
+}
@@ -15,6 +15,9 @@ import java.util.Map;
 @AllArgsConstructor
 @NoArgsConstructor
 public class Friendship {
+    public static final String UNCONFIRMED_STATUS = "неподтвержденная";
+    public static final String CONFIRMED_STATUS = "подтвержденная";
+
     private Long id;
     private Long friendId;
 
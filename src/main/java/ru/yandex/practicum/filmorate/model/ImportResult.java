@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+public class ImportResult {
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private long imported;
+    private long failed;
+    private final List<ImportError> errors = new ArrayList<>();
+
+    public void addImported(long count) {
+        imported += count;
+    }
+
+    public void addError(long line, String error) {
+        failed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new ImportError(line, error));
+        }
+    }
+
+    public void merge(ImportResult other) {
+        imported += other.imported;
+        failed += other.failed;
+        other.errors.stream()
+                .limit(MAX_REPORTED_ERRORS - errors.size())
+                .forEach(errors::add);
+    }
+}
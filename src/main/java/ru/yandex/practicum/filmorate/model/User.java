@@ -16,7 +16,7 @@ import java.util.Map;
 import java.util.Set;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 public class User {
@@ -0,0 +1,141 @@
+package ru.yandex.practicum.filmorate.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.config.QueryCounter;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+@Component
+public class BatchLoader {
+    private final ExecutorService executor;
+    private final QueryCounter queryCounter;
+
+    public BatchLoader(@Value("${filmorate.loader.threads:2}") int threads,
+                       @Value("${filmorate.loader.queue:100}") int queue, QueryCounter queryCounter) {
+        this.queryCounter = queryCounter;
+        if (threads > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("filmorate-loader-");
+            threadFactory.setDaemon(true);
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queue), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public Session session() {
+        return new Session();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public class Session {
+        private final List<Task<?>> tasks = new ArrayList<>();
+
+        private Session() {
+        }
+
+        public <K, V> Loader<K, V> loader(Function<Collection<K>, Map<K, V>> batchFunction) {
+            Loader<K, V> loader = new Loader<>();
+            tasks.add(new Task<>(() -> loader.keys.isEmpty() ? Map.<K, V>of() : batchFunction.apply(loader.keys),
+                    loader.result));
+            return loader;
+        }
+
+        public <T> CompletableFuture<T> query(Supplier<T> query) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            tasks.add(new Task<>(query, result));
+            return result;
+        }
+
+        public void dispatch() {
+            boolean concurrent = executor != null && tasks.size() > 1 &&
+                    !TransactionSynchronizationManager.isActualTransactionActive();
+
+            List<CompletableFuture<?>> submitted = new ArrayList<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                Task<?> task = tasks.get(i);
+                if (concurrent && i < tasks.size() - 1) {
+                    submitted.add(CompletableFuture.runAsync(queryCounter.propagate(task)::get, executor));
+                } else {
+                    task.run();
+                }
+            }
+            tasks.clear();
+
+            try {
+                CompletableFuture.allOf(submitted.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    public static class Loader<K, V> {
+        private final Set<K> keys = new LinkedHashSet<>();
+        private final CompletableFuture<Map<K, V>> result = new CompletableFuture<>();
+
+        private Loader() {
+        }
+
+        public CompletableFuture<V> load(K key) {
+            keys.add(key);
+            return result.thenApply(values -> values.get(key));
+        }
+
+        public CompletableFuture<Map<K, V>> loadMany(Collection<K> keys) {
+            this.keys.addAll(keys);
+            return result;
+        }
+    }
+
+    private static class Task<T> implements Supplier<Void> {
+        private final Supplier<T> query;
+        private final CompletableFuture<T> result;
+
+        private Task(Supplier<T> query, CompletableFuture<T> result) {
+            this.query = query;
+            this.result = result;
+        }
+
+        @Override
+        public Void get() {
+            run();
+            return null;
+        }
+
+        private void run() {
+            try {
+                result.complete(query.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.repository;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class DictionaryVersion {
+    private final AtomicLong version = new AtomicLong();
+
+    public long get() {
+        return version.get();
+    }
+
+    public void bump() {
+        version.accumulateAndGet(System.currentTimeMillis(), (current, now) -> Math.max(current + 1, now));
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.repository;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Event;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+@Repository
+public class EventsRepository {
+    private static final String INSERT_SQL = "insert into events (user_id, entity_id, event_type, operation, " +
+            "created_at) values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EventsRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Transactional
+    public List<Event> saveAll(List<Event> events) {
+        if (events.isEmpty()) {
+            return events;
+        }
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement stmt = con.prepareStatement(INSERT_SQL, new String[]{"seq"})) {
+                for (Event event : events) {
+                    stmt.setLong(1, event.getUserId());
+                    stmt.setLong(2, event.getEntityId());
+                    stmt.setString(3, event.getEventType().name());
+                    stmt.setString(4, event.getOperation().name());
+                    stmt.setLong(5, event.getTimestamp());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (Event event : events) {
+                        keys.next();
+                        event.setEventId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+
+        return events;
+    }
+
+    public List<Event> findPage(Long userId, Long after, int limit) {
+        String sql = "select seq, user_id, entity_id, event_type, operation, created_at from events " +
+                "where user_id = ? and seq > ? order by seq limit ?";
+
+        return jdbcTemplate.query(sql, this::mapRowToEvent, userId, after, limit);
+    }
+
+    private Event mapRowToEvent(ResultSet resultSet, int rowNum) throws SQLException {
+        return Event.builder()
+                .eventId(resultSet.getLong("seq"))
+                .userId(resultSet.getLong("user_id"))
+                .entityId(resultSet.getLong("entity_id"))
+                .eventType(Event.EventType.valueOf(resultSet.getString("event_type")))
+                .operation(Event.Operation.valueOf(resultSet.getString("operation")))
+                .timestamp(resultSet.getLong("created_at"))
+                .build();
+    }
+}
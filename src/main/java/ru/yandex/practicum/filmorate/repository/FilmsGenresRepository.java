@@ -9,10 +9,19 @@ import ru.yandex.practicum.filmorate.model.Genre;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Repository
 public class FilmsGenresRepository {
+    private static final String FILM_GENRES_SQL = "select film_id, genre_id from films_genres";
+
     private final JdbcTemplate jdbcTemplate;
     private final GenreRepository genreRepository;
 
@@ -28,15 +37,48 @@ public class FilmsGenresRepository {
         jdbcTemplate.update(sql, filmGenre.getFilmId(), filmGenre.getGenreId());
     }
 
+    public void saveAll(Long filmId, Collection<Long> genreIds) {
+        String sql = "insert into films_genres (film_id, genre_id) values (?, ?)";
+
+        batchUpdate(sql, filmId, genreIds);
+    }
+
+    public void saveAll(List<FilmGenre> filmGenres) {
+        String sql = "insert into films_genres (film_id, genre_id) values (?, ?)";
+
+        jdbcTemplate.batchUpdate(sql, filmGenres.stream()
+                .map(filmGenre -> new Object[]{filmGenre.getFilmId(), filmGenre.getGenreId()})
+                .collect(Collectors.toList()));
+    }
+
+    public Set<Long> findGenreIds(Long filmId) {
+        String sql = "select genre_id from films_genres where film_id = ?";
+
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class, filmId));
+    }
+
     public List<Genre> findFilmGenres(Long id) {
-        String sql = "select film_id, genre_id from films_genres where film_id = ?";
+        String sql = FILM_GENRES_SQL + " where film_id = ? order by genre_id";
+
+        return jdbcTemplate.query(sql, (resultSet, rowNum) -> genreRepository.findOne(resultSet.getLong("genre_id")),
+                id);
+    }
 
-        List<Genre> filmGenres = new ArrayList<>();
-        List<FilmGenre> entities = jdbcTemplate.query(sql, this::mapRowToFilmGenre, id);
+    public Map<Long, List<Genre>> findFilmsGenres(Collection<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
 
-        entities.forEach(entity -> filmGenres.add(genreRepository.findOne(entity.getGenreId())));
+        String sql = FILM_GENRES_SQL + " where film_id in (" +
+                String.join(", ", Collections.nCopies(filmIds.size(), "?")) + ") order by film_id, genre_id";
 
-        return filmGenres;
+        return groupByFilm(sql, filmIds.toArray());
+    }
+
+    public Map<Long, List<Genre>> findAllFilmsGenres() {
+        String sql = FILM_GENRES_SQL + " order by film_id, genre_id";
+
+        return groupByFilm(sql);
     }
 
     public void update(Long filmId, Long genreId) {
@@ -63,10 +105,37 @@ public class FilmsGenresRepository {
         return jdbcTemplate.update(sql, filmId) > 0;
     }
 
+    public void deleteAll(Long filmId, Collection<Long> genreIds) {
+        String sql = "delete from films_genres where film_id = ? and genre_id = ?";
+
+        batchUpdate(sql, filmId, genreIds);
+    }
+
     public FilmGenre mapRowToFilmGenre(ResultSet resultSet, int resNum) throws SQLException {
         return FilmGenre.builder()
                 .filmId(resultSet.getLong("film_id"))
                 .genreId(resultSet.getLong("genre_id"))
                 .build();
     }
+
+    private void batchUpdate(String sql, Long filmId, Collection<Long> genreIds) {
+        if (genreIds.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(sql, genreIds.stream()
+                .map(genreId -> new Object[]{filmId, genreId})
+                .collect(Collectors.toList()));
+    }
+
+    private Map<Long, List<Genre>> groupByFilm(String sql, Object... args) {
+        Map<Long, List<Genre>> filmsGenres = new HashMap<>();
+
+        jdbcTemplate.query(sql, resultSet -> {
+            filmsGenres.computeIfAbsent(resultSet.getLong("film_id"), filmId -> new ArrayList<>())
+                    .add(genreRepository.findOne(resultSet.getLong("genre_id")));
+        }, args);
+
+        return filmsGenres;
+    }
 }
@@ -1,74 +1,163 @@
 package ru.yandex.practicum.filmorate.repository;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
 import ru.yandex.practicum.filmorate.model.Genre;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Repository
 public class FilmsRepository {
+    private static final String INSERT_SQL = "insert into films (name, description, release_date, duration, rate, " +
+            "mpa_rating, genre_mask) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String FILMS_SQL = "select f.id, f.name, f.description, f.release_date, f.duration, " +
+            "f.rate, f.mpa_rating, f.genre_mask from films f";
+    private static final String GENRE_MASK_SQL = "(select case when max(fg.genre_id) > " + GenreMask.MAX_GENRE_ID +
+            " then null else coalesce(sum(cast(power(2, fg.genre_id) as bigint)), 0) end " +
+            "from films_genres fg where fg.film_id = f.id)";
+
     private final JdbcTemplate jdbcTemplate;
     private final FilmsGenresRepository filmsGenresRepository;
     private final MpaRepository mpaRepository;
+    private final GenreRepository genreRepository;
+    private final BatchLoader batchLoader;
+    private final boolean genreMaskReads;
 
     @Autowired
     public FilmsRepository(JdbcTemplate jdbcTemplate, FilmsGenresRepository filmsGenresRepository,
-                           MpaRepository mpaRepository) {
+                           MpaRepository mpaRepository, GenreRepository genreRepository, BatchLoader batchLoader,
+                           @Value("${filmorate.films.genre-mask-reads:false}") boolean genreMaskReads) {
         this.jdbcTemplate = jdbcTemplate;
         this.filmsGenresRepository = filmsGenresRepository;
         this.mpaRepository = mpaRepository;
+        this.genreRepository = genreRepository;
+        this.batchLoader = batchLoader;
+        this.genreMaskReads = genreMaskReads;
     }
 
-    public Film save(Film film) {
-        String sql = "insert into films (name, description, release_date, duration, rate, mpa_rating) " +
-                "values (?, ?, ?, ?, ?, ?)";
+    @PostConstruct
+    public void fillMissingGenreMasks() {
+        String sql = "update films f set genre_mask = " + GENRE_MASK_SQL + " where f.genre_mask is null " +
+                "and not exists (select 1 from films_genres fg where fg.film_id = f.id and fg.genre_id > " +
+                GenreMask.MAX_GENRE_ID + ")";
 
+        int filled = jdbcTemplate.update(sql);
+        if (filled > 0) {
+            log.info("Маски жанров заполнены у фильмов: " + filled);
+        }
+    }
+
+    @Transactional
+    public Film save(Film film) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
 
         jdbcTemplate.update(con -> {
-            PreparedStatement stmt = con.prepareStatement(sql, new String[]{"id"});
-            stmt.setString(1, film.getName());
-            stmt.setString(2, film.getDescription());
-            stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
-            stmt.setInt(4, film.getDuration());
-            stmt.setInt(5, film.getRate());
-            stmt.setLong(6, film.getMpa().getId());
+            PreparedStatement stmt = con.prepareStatement(INSERT_SQL, new String[]{"id"});
+            setFilmParameters(stmt, film);
 
             return stmt;
         }, keyHolder);
 
         film.setId(keyHolder.getKey().longValue());
 
-        if (film.getGenres() != null) {
-            film.getGenres().forEach(genre -> filmsGenresRepository.save(
-                    FilmGenre.builder()
-                            .filmId(film.getId())
-                            .genreId(genre.getId())
-                            .build()));
-        }
+        Set<Long> genreIds = getGenreIds(film);
+        filmsGenresRepository.saveAll(film.getId(), genreIds);
 
         film.setMpa(mpaRepository.findOne(film.getMpa().getId()));
-
-        List<Genre> genres = filmsGenresRepository.findFilmGenres(film.getId());
-        film.setGenres(genres);
+        film.setGenres(toGenres(genreIds));
 
         return film;
     }
 
+    @Transactional
+    public List<Film> saveAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement stmt = con.prepareStatement(INSERT_SQL, new String[]{"id"})) {
+                for (Film film : films) {
+                    setFilmParameters(stmt, film);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        keys.next();
+                        film.setId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+
+        List<FilmGenre> filmGenres = new ArrayList<>();
+        films.forEach(film -> getGenreIds(film).forEach(genreId -> filmGenres.add(FilmGenre.builder()
+                .filmId(film.getId())
+                .genreId(genreId)
+                .build())));
+        filmsGenresRepository.saveAll(filmGenres);
+
+        films.forEach(film -> {
+            film.setMpa(mpaRepository.findOne(film.getMpa().getId()));
+            film.setGenres(toGenres(getGenreIds(film)));
+        });
+
+        return films;
+    }
+
     public Film findOne(Long id) {
-        String sql = "select id, name, description, release_date, duration, rate, mpa_rating from films where id = ?";
+        String sql = FILMS_SQL + " where f.id = ?";
+
+        if (genreMaskReads) {
+            List<Film> films = jdbcTemplate.query(sql, this::mapRowToFilm, id);
+            loadMissingGenres(films);
+            return films.isEmpty() ? null : films.get(0);
+        }
 
-        return jdbcTemplate.queryForObject(sql, this::mapRowToFilm, id);
+        BatchLoader.Session session = batchLoader.session();
+        CompletableFuture<List<Film>> films = session.query(() -> jdbcTemplate.query(sql, this::mapRowToFilm, id));
+        CompletableFuture<List<Genre>> genres = session.query(() -> filmsGenresRepository.findFilmGenres(id));
+        session.dispatch();
+
+        if (films.join().isEmpty()) {
+            return null;
+        }
+
+        Film film = films.join().get(0);
+        film.setGenres(genres.join());
+
+        return film;
     }
 
     public boolean exists(Long id) {
@@ -77,50 +166,215 @@ public class FilmsRepository {
         return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, new Object[]{id}, Boolean.class));
     }
 
+    public Long findVersion(Long id) {
+        String sql = "select version from films where id = ?";
+
+        List<Long> versions = jdbcTemplate.queryForList(sql, Long.class, id);
+        return versions.isEmpty() ? null : versions.get(0);
+    }
+
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        String sql = "select id from films where id in (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class, ids.toArray()));
+    }
+
     public List<Film> findAll() {
-        String sql = "select id, name, description, release_date, duration, rate, mpa_rating from films";
+        String sql = FILMS_SQL;
+
+        if (genreMaskReads) {
+            List<Film> films = jdbcTemplate.query(sql, this::mapRowToFilm);
+            loadMissingGenres(films);
+            return films;
+        }
+
+        BatchLoader.Session session = batchLoader.session();
+        CompletableFuture<List<Film>> films = session.query(() -> jdbcTemplate.query(sql, this::mapRowToFilm));
+        CompletableFuture<Map<Long, List<Genre>>> genres = session.query(filmsGenresRepository::findAllFilmsGenres);
+        session.dispatch();
+
+        setGenres(films.join(), genres.join());
+        return films.join();
+    }
+
+    public List<Film> findAll(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        String sql = FILMS_SQL + " where f.id in (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+
+        BatchLoader.Session session = batchLoader.session();
+        CompletableFuture<List<Film>> rows = session.query(() ->
+                jdbcTemplate.query(sql, this::mapRowToFilm, ids.toArray()));
+        CompletableFuture<Map<Long, List<Genre>>> genres = genreMaskReads ? null : session
+                .<Long, List<Genre>>loader(filmsGenresRepository::findFilmsGenres)
+                .loadMany(ids);
+        session.dispatch();
+
+        Map<Long, Film> films = rows.join().stream()
+                .collect(Collectors.toMap(Film::getId, film -> film));
+        List<Film> orderedFilms = ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        if (genres == null) {
+            loadMissingGenres(orderedFilms);
+        } else {
+            setGenres(orderedFilms, genres.join());
+        }
+
+        return orderedFilms;
+    }
+
+    public List<Film> findPage(Long after, int limit) {
+        String sql = FILMS_SQL + " where f.id > ? order by f.id limit ?";
+
+        List<Film> films = jdbcTemplate.query(sql, this::mapRowToFilm, after, limit);
+        loadMissingGenres(films);
+
+        return films;
+    }
+
+    public List<Film> findPopular(int count) {
+        return findPopular(count, null, null, null);
+    }
+
+    public List<Film> findPopular(int count, Long genreId, Integer year, Long mpaId) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+
+        if (genreId != null) {
+            conditions.add("exists (select 1 from films_genres fg where fg.film_id = f.id and fg.genre_id = ?)");
+            args.add(genreId);
+        }
+        if (year != null) {
+            conditions.add("f.release_date >= ? and f.release_date < ?");
+            args.add(LocalDate.of(year, 1, 1));
+            args.add(LocalDate.of(year + 1, 1, 1));
+        }
+        if (mpaId != null) {
+            conditions.add("f.mpa_rating = ?");
+            args.add(mpaId);
+        }
+        args.add(count);
+
+        String sql = FILMS_SQL + (conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions)) +
+                " order by f.rate desc, f.id limit ?";
+
+        List<Film> films = jdbcTemplate.query(sql, this::mapRowToFilm, args.toArray());
+        loadMissingGenres(films);
+
+        return films;
+    }
+
+    public void streamAll(Consumer<Film> action) {
+        String sql = "select f.id, f.name, f.description, f.release_date, f.duration, f.rate, f.mpa_rating, " +
+                "f.genre_mask, fg.genre_id from films f left join films_genres fg on fg.film_id = f.id order by f.id, fg.genre_id";
+
+        Film[] current = new Film[1];
+
+        jdbcTemplate.query(sql, resultSet -> {
+            long id = resultSet.getLong("id");
 
-        return jdbcTemplate.query(sql, this::mapRowToFilm);
+            if (current[0] == null || current[0].getId() != id) {
+                if (current[0] != null) {
+                    action.accept(current[0]);
+                }
+                current[0] = mapRowToFilm(resultSet, resultSet.getRow());
+                current[0].setGenres(new ArrayList<>());
+            }
+
+            long genreId = resultSet.getLong("genre_id");
+            if (!resultSet.wasNull()) {
+                current[0].getGenres().add(genreRepository.findOne(genreId));
+            }
+        });
+
+        if (current[0] != null) {
+            action.accept(current[0]);
+        }
     }
 
+    @Transactional
     public Film update(Film film) {
         String sql = "update films set name = ?, description = ?, release_date = ?, duration = ?, rate = ?, " +
-                "mpa_rating = ? where id = ?";
+                "mpa_rating = ?, genre_mask = ?, version = version + 1 where id = ?";
 
-        jdbcTemplate.update(sql,
+        int updated = jdbcTemplate.update(sql,
                 film.getName(),
                 film.getDescription(),
                 film.getReleaseDate(),
                 film.getDuration(),
                 film.getRate(),
                 film.getMpa().getId(),
+                GenreMask.of(getGenreIds(film)),
                 film.getId());
 
-        filmsGenresRepository.delete(film.getId());
-
-        if (film.getGenres() != null) {
-            film.getGenres().forEach(genre -> {
-                if (!filmsGenresRepository.exists(film.getId(), genre.getId())) {
-                    filmsGenresRepository.save(FilmGenre.builder()
-                            .filmId(film.getId())
-                            .genreId(genre.getId())
-                            .build());
-                }
-            });
+        if (updated == 0) {
+            return null;
         }
 
-        return findOne(film.getId());
+        Set<Long> genreIds = getGenreIds(film);
+        Set<Long> currentGenreIds = filmsGenresRepository.findGenreIds(film.getId());
+
+        filmsGenresRepository.deleteAll(film.getId(), currentGenreIds.stream()
+                .filter(genreId -> !genreIds.contains(genreId))
+                .collect(Collectors.toList()));
+        filmsGenresRepository.saveAll(film.getId(), genreIds.stream()
+                .filter(genreId -> !currentGenreIds.contains(genreId))
+                .collect(Collectors.toList()));
+
+        film.setMpa(mpaRepository.findOne(film.getMpa().getId()));
+        film.setGenres(toGenres(genreIds));
+
+        return film;
     }
 
+    public boolean changeRate(Long id, int delta) {
+        String sql = "update films set rate = rate + ?, version = version + 1 where id = ?";
+
+        return jdbcTemplate.update(sql, delta, id) > 0;
+    }
+
+    public void changeRates(Map<Long, Integer> deltas) {
+        String sql = "update films set rate = rate + ?, version = version + 1 where id = ?";
+
+        jdbcTemplate.batchUpdate(sql, deltas.entrySet().stream()
+                .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                .collect(Collectors.toList()));
+    }
+
+    public int countInconsistentGenreMasks() {
+        String sql = "select count(*) from films f where f.genre_mask is distinct from " + GENRE_MASK_SQL;
+
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    public int rebuildGenreMasks() {
+        String sql = "update films f set genre_mask = " + GENRE_MASK_SQL + ", version = version + 1 " +
+                "where f.genre_mask is distinct from " + GENRE_MASK_SQL;
+
+        return jdbcTemplate.update(sql);
+    }
+
+    @Transactional
     public boolean delete(Long id) {
+        String likersSql = "update users set version = version + 1 where id in " +
+                "(select user_id from likes where film_id = ?)";
         String sql = "delete from films where id = ?";
 
+        jdbcTemplate.update(likersSql, id);
         return jdbcTemplate.update(sql, id) > 0;
     }
 
     public Film mapRowToFilm(ResultSet resultSet, int resNum) throws SQLException {
-        List<Genre> genres = filmsGenresRepository.findFilmGenres(resultSet.getLong("id"));
-
         return Film.builder()
                 .id(resultSet.getLong("id"))
                 .name(resultSet.getString("name"))
@@ -129,7 +383,55 @@ public class FilmsRepository {
                 .duration(resultSet.getInt("duration"))
                 .rate(resultSet.getInt("rate"))
                 .mpa(mpaRepository.findOne(resultSet.getLong("mpa_rating")))
-                .genres(genres)
+                .genres(genreMaskReads ? genresFromMask(resultSet.getObject("genre_mask", Long.class)) : null)
                 .build();
     }
+
+    private void setFilmParameters(PreparedStatement stmt, Film film) throws SQLException {
+        stmt.setString(1, film.getName());
+        stmt.setString(2, film.getDescription());
+        stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
+        stmt.setInt(4, film.getDuration());
+        stmt.setInt(5, film.getRate());
+        stmt.setLong(6, film.getMpa().getId());
+        stmt.setObject(7, GenreMask.of(getGenreIds(film)), Types.BIGINT);
+    }
+
+    private Set<Long> getGenreIds(Film film) {
+        if (film.getGenres() == null) {
+            return new TreeSet<>();
+        }
+        return film.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private List<Genre> toGenres(Set<Long> genreIds) {
+        return genreIds.stream()
+                .map(genreRepository::findOne)
+                .collect(Collectors.toList());
+    }
+
+    private List<Genre> genresFromMask(Long mask) {
+        if (mask == null) {
+            return null;
+        }
+        return GenreMask.ids(mask).stream()
+                .map(genreRepository::findOne)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private void loadMissingGenres(List<Film> films) {
+        List<Film> missing = films.stream()
+                .filter(film -> film.getGenres() == null)
+                .collect(Collectors.toList());
+        setGenres(missing, filmsGenresRepository.findFilmsGenres(missing.stream()
+                .map(Film::getId)
+                .collect(Collectors.toList())));
+    }
+
+    private void setGenres(List<Film> films, Map<Long, List<Genre>> filmsGenres) {
+        films.forEach(film -> film.setGenres(filmsGenres.getOrDefault(film.getId(), new ArrayList<>())));
+    }
 }
@@ -3,33 +3,60 @@ package ru.yandex.practicum.filmorate.repository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsertOperations;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.model.Friendship;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Repository
 public class FriendshipRepository {
     private final JdbcTemplate jdbcTemplate;
+    private final SimpleJdbcInsertOperations friendshipInsert;
 
     @Autowired
     public FriendshipRepository(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.friendshipInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("friendship")
+                .usingColumns("id", "friend_id", "status")
+                .withoutTableColumnMetaDataAccess();
     }
 
     public Friendship save(Friendship friendship) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("friendship")
-                .usingGeneratedKeyColumns();
-
-        simpleJdbcInsert.execute(friendship.toMap());
+        friendshipInsert.execute(friendship.toMap());
         return friendship;
     }
 
+    public List<Friendship> saveAllIfAbsent(List<Friendship> friendships) {
+        String sql = "insert into friendship (id, friend_id, status) " +
+                "select cast(? as integer), cast(? as integer), cast(? as varchar) " +
+                "where not exists (select 1 from friendship where id = ? and friend_id = ?)";
+
+        int[] counts = jdbcTemplate.batchUpdate(sql, friendships.stream()
+                .map(friendship -> new Object[]{friendship.getId(), friendship.getFriendId(), friendship.getStatus(),
+                        friendship.getId(), friendship.getFriendId()})
+                .collect(Collectors.toList()));
+
+        return IntStream.range(0, counts.length)
+                .filter(i -> counts[i] > 0)
+                .mapToObj(friendships::get)
+                .collect(Collectors.toList());
+    }
+
     public Set<Long> findFriendsIds(Long id) {
         Set<Long> friendsIds = new LinkedHashSet<>();
 
@@ -41,6 +68,31 @@ public class FriendshipRepository {
         return friendsIds;
     }
 
+    public Map<Long, Set<Long>> findFriendsIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        String sql = "select id, friend_id from friendship where id in (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+
+        return groupFriendsIds(sql, ids.toArray());
+    }
+
+    public Set<Long> findFollowersIds(Long friendId) {
+        String sql = "select id from friendship where friend_id = ?";
+
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class, friendId));
+    }
+
+    public void streamAllFriendsIds(BiConsumer<Long, Long> action) {
+        String sql = "select id, friend_id from friendship order by id, friend_id";
+
+        jdbcTemplate.query(sql, resultSet -> {
+            action.accept(resultSet.getLong("id"), resultSet.getLong("friend_id"));
+        });
+    }
+
     public Friendship findOne(Long id, Long friend_id) {
         String sql = "select id, friend_id, status from friendship where id = ? and friend_id = ?";
 
@@ -59,12 +111,51 @@ public class FriendshipRepository {
         jdbcTemplate.update(sql, friendship.getStatus(), friendship.getId(), friendship.getFriendId());
     }
 
+    public Set<Long> updateStatusIfMutual(List<Friendship> friendships, String status) {
+        String sql = "update friendship set status = ? where id = ? and friend_id = ? " +
+                "and exists (select 1 from friendship where id = ? and friend_id = ?)";
+
+        List<Object[]> args = new ArrayList<>();
+        friendships.forEach(friendship -> {
+            args.add(new Object[]{status, friendship.getId(), friendship.getFriendId(),
+                    friendship.getFriendId(), friendship.getId()});
+            args.add(new Object[]{status, friendship.getFriendId(), friendship.getId(),
+                    friendship.getId(), friendship.getFriendId()});
+        });
+
+        int[] counts = jdbcTemplate.batchUpdate(sql, args);
+        Set<Long> updated = new HashSet<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                updated.add((Long) args.get(i)[1]);
+            }
+        }
+        return updated;
+    }
+
+    public boolean updateStatus(Long id, Long friendId, String status) {
+        String sql = "update friendship set status = ? where id = ? and friend_id = ? and status <> ?";
+
+        return jdbcTemplate.update(sql, status, id, friendId, status) > 0;
+    }
+
     public boolean delete(Long id, Long friend_id) {
         String sql = "delete from friendship where id = ? and friend_id = ?";
 
         return jdbcTemplate.update(sql, id, friend_id) > 0;
     }
 
+    private Map<Long, Set<Long>> groupFriendsIds(String sql, Object... args) {
+        Map<Long, Set<Long>> friendsIds = new HashMap<>();
+
+        jdbcTemplate.query(sql, resultSet -> {
+            friendsIds.computeIfAbsent(resultSet.getLong("id"), id -> new LinkedHashSet<>())
+                    .add(resultSet.getLong("friend_id"));
+        }, args);
+
+        return friendsIds;
+    }
+
     private Friendship mapRowToFriendship(ResultSet resultSet, int rowNum) throws SQLException {
         return Friendship.builder()
                 .id(resultSet.getLong("id"))
@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public final class GenreMask {
+    public static final int MAX_GENRE_ID = Long.SIZE - 2;
+
+    private GenreMask() {
+    }
+
+    public static Long of(Collection<Long> genreIds) {
+        long mask = 0;
+        for (Long genreId : genreIds) {
+            if (!fits(genreId)) {
+                return null;
+            }
+            mask |= bit(genreId);
+        }
+        return mask;
+    }
+
+    public static boolean fits(long genreId) {
+        return genreId >= 0 && genreId <= MAX_GENRE_ID;
+    }
+
+    public static long bit(long genreId) {
+        return 1L << genreId;
+    }
+
+    public static List<Long> ids(long mask) {
+        List<Long> ids = new ArrayList<>(Long.bitCount(mask));
+        for (long rest = mask; rest != 0; rest &= rest - 1) {
+            ids.add((long) Long.numberOfTrailingZeros(rest));
+        }
+        return ids;
+    }
+}
@@ -1,49 +1,84 @@
 package ru.yandex.practicum.filmorate.repository;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.model.Genre;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Repository
 public class GenreRepository {
     private final JdbcTemplate jdbcTemplate;
+    private final DictionaryVersion dictionaryVersion;
+    private final Counter hits;
+    private final Counter misses;
+    private volatile Map<Long, Genre> genres = Collections.emptyMap();
 
-    public GenreRepository(JdbcTemplate jdbcTemplate) {
+    public GenreRepository(JdbcTemplate jdbcTemplate, DictionaryVersion dictionaryVersion, MeterRegistry registry) {
         this.jdbcTemplate = jdbcTemplate;
+        this.dictionaryVersion = dictionaryVersion;
+        this.hits = registry.counter("filmorate.cache.lookups", "cache", "genres", "result", "hit");
+        this.misses = registry.counter("filmorate.cache.lookups", "cache", "genres", "result", "miss");
+    }
+
+    @PostConstruct
+    public void reload() {
+        String sql = "select id, name from genres order by id";
+
+        Map<Long, Genre> loaded = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, this::mapRowToGenre)
+                .forEach(genre -> loaded.put(genre.getId(), genre));
+
+        genres = Collections.unmodifiableMap(loaded);
+        dictionaryVersion.bump();
     }
 
     public void save(Genre genre) {
         String sql = "insert into genres (name) values (?)";
 
-        jdbcTemplate.update(sql, genre.getId(), genre.getName());
+        jdbcTemplate.update(sql, genre.getName());
+        reload();
     }
 
     public Genre findOne(Long id) {
-        String sql = "select id, name from genres where id = ?";
-
-        return jdbcTemplate.queryForObject(sql, this::mapRowToGenre, id);
+        Genre genre = genres.get(id);
+        (genre == null ? misses : hits).increment();
+        return genre == null ? null : copy(genre);
     }
 
     public boolean exists(Long id) {
-        String sql = "select exists(select 1 from genres where id = ?)";
-
-        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, new Object[]{id}, Boolean.class));
+        return genres.containsKey(id);
     }
 
     public List<Genre> findAll() {
-        String sql = "select id, name from genres";
-
-        return jdbcTemplate.query(sql, this::mapRowToGenre);
+        return genres.values().stream()
+                .map(this::copy)
+                .collect(Collectors.toList());
     }
 
     public boolean delete(Long id) {
         String sql = "delete from genres where id = ?";
 
-        return jdbcTemplate.update(sql, id) > 0;
+        boolean deleted = jdbcTemplate.update(sql, id) > 0;
+        reload();
+
+        return deleted;
+    }
+
+    private Genre copy(Genre genre) {
+        return Genre.builder()
+                .id(genre.getId())
+                .name(genre.getName())
+                .build();
     }
 
     private Genre mapRowToGenre(ResultSet resultSet, int rowNum) throws SQLException {
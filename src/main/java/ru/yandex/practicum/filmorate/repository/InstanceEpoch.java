@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.repository;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class InstanceEpoch {
+    private final long epoch = System.currentTimeMillis();
+
+    public long get() {
+        return epoch;
+    }
+}
@@ -1,15 +1,23 @@
 package ru.yandex.practicum.filmorate.repository;
 
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.model.Like;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Repository
 public class LikesRepository {
@@ -25,12 +33,43 @@ public class LikesRepository {
         jdbcTemplate.update(sql, like.getUserId(), like.getFilmId());
     }
 
+    public boolean saveIfAbsent(Like like) {
+        String sql = "insert into likes (user_id, film_id) select cast(? as integer), cast(? as integer) " +
+                "where not exists (select 1 from likes where user_id = ? and film_id = ?)";
+
+        try {
+            return jdbcTemplate.update(sql, like.getUserId(), like.getFilmId(), like.getUserId(), like.getFilmId()) > 0;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    public List<Like> saveAllIfAbsent(List<Like> likes) {
+        String sql = "insert into likes (user_id, film_id) select cast(? as integer), cast(? as integer) " +
+                "where not exists (select 1 from likes where user_id = ? and film_id = ?)";
+
+        int[] counts = jdbcTemplate.batchUpdate(sql, likes.stream()
+                .map(like -> new Object[]{like.getUserId(), like.getFilmId(), like.getUserId(), like.getFilmId()})
+                .collect(Collectors.toList()));
+
+        return IntStream.range(0, counts.length)
+                .filter(i -> counts[i] > 0)
+                .mapToObj(likes::get)
+                .collect(Collectors.toList());
+    }
+
     public Like findOne(Long userId, Long filmId) {
         String sql = "select user_id, film_id from likes where user_id = ? and film_id = ?";
 
         return jdbcTemplate.queryForObject(sql, this::mapRowToLike, userId, filmId);
     }
 
+    public boolean exists(Long userId, Long filmId) {
+        String sql = "select exists(select 1 from likes where user_id = ? and film_id = ?)";
+
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, userId, filmId));
+    }
+
     public Set<Long> findLikedFilmsByUserId(Long userId) {
         HashSet<Long> likedFilmsIds = new LinkedHashSet<>();
 
@@ -42,12 +81,55 @@ public class LikesRepository {
         return likedFilmsIds;
     }
 
+    public Map<Long, Set<Long>> findLikedFilmsByUserIds(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        String sql = "select user_id, film_id from likes where user_id in (" +
+                String.join(", ", Collections.nCopies(userIds.size(), "?")) + ")";
+
+        return groupLikedFilms(sql, userIds.toArray());
+    }
+
+    public void streamAllLikes(BiConsumer<Long, Long> action) {
+        String sql = "select user_id, film_id from likes";
+
+        jdbcTemplate.query(sql, resultSet -> {
+            action.accept(resultSet.getLong("user_id"), resultSet.getLong("film_id"));
+        });
+    }
+
     public boolean delete(Long userId, Long filmId) {
         String sql = "delete from likes where user_id = ? and film_id = ?";
 
         return jdbcTemplate.update(sql, userId, filmId) > 0;
     }
 
+    public List<Like> deleteAll(List<Like> likes) {
+        String sql = "delete from likes where user_id = ? and film_id = ?";
+
+        int[] counts = jdbcTemplate.batchUpdate(sql, likes.stream()
+                .map(like -> new Object[]{like.getUserId(), like.getFilmId()})
+                .collect(Collectors.toList()));
+
+        return IntStream.range(0, counts.length)
+                .filter(i -> counts[i] > 0)
+                .mapToObj(likes::get)
+                .collect(Collectors.toList());
+    }
+
+    private Map<Long, Set<Long>> groupLikedFilms(String sql, Object... args) {
+        Map<Long, Set<Long>> likedFilms = new HashMap<>();
+
+        jdbcTemplate.query(sql, resultSet -> {
+            likedFilms.computeIfAbsent(resultSet.getLong("user_id"), userId -> new LinkedHashSet<>())
+                    .add(resultSet.getLong("film_id"));
+        }, args);
+
+        return likedFilms;
+    }
+
     private Like mapRowToLike(ResultSet resultSet, int rowNum) throws SQLException {
         return Like.builder()
                 .userId(resultSet.getLong("user_id"))
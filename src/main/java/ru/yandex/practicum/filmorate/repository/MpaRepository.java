@@ -1,54 +1,94 @@
 package ru.yandex.practicum.filmorate.repository;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsertOperations;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.model.Mpa;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Repository
 public class MpaRepository {
     private final JdbcTemplate jdbcTemplate;
+    private final DictionaryVersion dictionaryVersion;
+    private final SimpleJdbcInsertOperations mpaInsert;
+    private final Counter hits;
+    private final Counter misses;
+    private volatile Map<Long, Mpa> ratings = Collections.emptyMap();
 
     @Autowired
-    public MpaRepository(JdbcTemplate jdbcTemplate) {
+    public MpaRepository(JdbcTemplate jdbcTemplate, DictionaryVersion dictionaryVersion, MeterRegistry registry) {
         this.jdbcTemplate = jdbcTemplate;
+        this.dictionaryVersion = dictionaryVersion;
+        this.mpaInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("mpa")
+                .usingColumns("name")
+                .usingGeneratedKeyColumns("id")
+                .withoutTableColumnMetaDataAccess();
+        this.hits = registry.counter("filmorate.cache.lookups", "cache", "mpa", "result", "hit");
+        this.misses = registry.counter("filmorate.cache.lookups", "cache", "mpa", "result", "miss");
+    }
+
+    @PostConstruct
+    public void reload() {
+        String sql = "select id, name from mpa order by id";
+
+        Map<Long, Mpa> loaded = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, this::mapRowToMpa)
+                .forEach(mpa -> loaded.put(mpa.getId(), mpa));
+
+        ratings = Collections.unmodifiableMap(loaded);
+        dictionaryVersion.bump();
     }
 
     public Long save(Mpa mpa) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("mpa")
-                .usingGeneratedKeyColumns("id");
+        Long id = mpaInsert.executeAndReturnKey(mpa.toMap()).longValue();
+        reload();
 
-        return simpleJdbcInsert.executeAndReturnKey(mpa.toMap()).longValue();
+        return id;
     }
 
     public Mpa findOne(Long id) {
-        String sql = "select id, name from mpa where id = ?";
-
-        return jdbcTemplate.queryForObject(sql, this::mapRowToMpa, id);
+        Mpa mpa = ratings.get(id);
+        (mpa == null ? misses : hits).increment();
+        return mpa == null ? null : copy(mpa);
     }
 
     public boolean exists(Long id) {
-        String sql = "select exists(select 1 from mpa where id = ?)";
-
-        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, new Object[]{id}, Boolean.class));
+        return ratings.containsKey(id);
     }
 
     public List<Mpa> findAll() {
-        String sql = "select id, name from mpa";
-
-        return jdbcTemplate.query(sql, this::mapRowToMpa);
+        return ratings.values().stream()
+                .map(this::copy)
+                .collect(Collectors.toList());
     }
 
     public boolean delete(Long id) {
         String sql = "delete from mpa where id = ?";
 
-        return jdbcTemplate.update(sql, id) > 0;
+        boolean deleted = jdbcTemplate.update(sql, id) > 0;
+        reload();
+
+        return deleted;
+    }
+
+    private Mpa copy(Mpa mpa) {
+        return Mpa.builder()
+                .id(mpa.getId())
+                .name(mpa.getName())
+                .build();
     }
 
     private Mpa mapRowToMpa(ResultSet resultSet, int rowNum) throws SQLException {
@@ -1,76 +1,277 @@
 package ru.yandex.practicum.filmorate.repository;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsertOperations;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.sql.Date;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Repository
 public class UsersRepository {
+    private static final String USERS_SQL = "select u.id, u.email, u.login, u.name, u.birthday from users u";
+    private static final int STREAM_CHUNK_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
     private final FriendshipRepository friendshipRepository;
     private final LikesRepository likesRepository;
+    private final BatchLoader batchLoader;
+    private final SimpleJdbcInsertOperations userInsert;
 
     @Autowired
     public UsersRepository(JdbcTemplate jdbcTemplate, FriendshipRepository friendshipRepository,
-                           LikesRepository likesRepository) {
+                           LikesRepository likesRepository, BatchLoader batchLoader) {
         this.jdbcTemplate = jdbcTemplate;
         this.friendshipRepository = friendshipRepository;
         this.likesRepository = likesRepository;
+        this.batchLoader = batchLoader;
+        this.userInsert = new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("users")
+                .usingColumns("email", "login", "name", "birthday")
+                .usingGeneratedKeyColumns("id")
+                .withoutTableColumnMetaDataAccess();
     }
 
     public User save(User user) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("users")
-                .usingGeneratedKeyColumns("id");
-
-        user.setId(simpleJdbcInsert.executeAndReturnKey(user.toMap()).longValue());
+        user.setId(userInsert.executeAndReturnKey(user.toMap()).longValue());
         return user;
     }
 
+    @Transactional
+    public List<User> saveAll(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+
+        String sql = "insert into users (email, login, name, birthday) values (?, ?, ?, ?)";
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement stmt = con.prepareStatement(sql, new String[]{"id"})) {
+                for (User user : users) {
+                    stmt.setString(1, user.getEmail());
+                    stmt.setString(2, user.getLogin());
+                    stmt.setString(3, user.getName());
+                    stmt.setDate(4, Date.valueOf(user.getBirthday()));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (User user : users) {
+                        keys.next();
+                        user.setId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+
+        return users;
+    }
+
     public User findOne(Long id) {
-        String sql = "select id, email, login, name, birthday from users where id = ?";
+        String sql = USERS_SQL + " where u.id = ?";
 
-        User user = jdbcTemplate.queryForObject(sql, this::mapRowToUser, id);
+        BatchLoader.Session session = batchLoader.session();
+        CompletableFuture<List<User>> users = session.query(() -> jdbcTemplate.query(sql, this::mapRowToUser, id));
+        CompletableFuture<Set<Long>> friends = session
+                .<Long, Set<Long>>loader(friendshipRepository::findFriendsIds)
+                .load(id);
+        CompletableFuture<Set<Long>> likedFilms = session
+                .<Long, Set<Long>>loader(likesRepository::findLikedFilmsByUserIds)
+                .load(id);
+        session.dispatch();
+
+        if (users.join().isEmpty()) {
+            return null;
+        }
+
+        User user = users.join().get(0);
+        user.setFriends(friends.join() == null ? new LinkedHashSet<>() : friends.join());
+        user.setLikedFilms(likedFilms.join() == null ? new LinkedHashSet<>() : likedFilms.join());
         return user;
     }
 
+    public Long findVersion(Long id) {
+        String sql = "select version from users where id = ?";
+
+        List<Long> versions = jdbcTemplate.queryForList(sql, Long.class, id);
+        return versions.isEmpty() ? null : versions.get(0);
+    }
+
     public boolean exists(Long id) {
         String sql = "select exists(select 1 from users where id = ?)";
 
         return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, new Object[]{id}, Boolean.class));
     }
 
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        String sql = "select id from users where id in (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Long.class, ids.toArray()));
+    }
+
     public List<User> findAll() {
-        String sql = "select id, email, login, name, birthday from users";
+        List<User> users = new ArrayList<>();
+        streamAll(users::add);
+        return users;
+    }
+
+    public List<User> findAll(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        String sql = USERS_SQL + " where u.id in (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
 
-        return jdbcTemplate.query(sql, this::mapRowToUser);
+        BatchLoader.Session session = batchLoader.session();
+        CompletableFuture<List<User>> rows = session.query(() ->
+                jdbcTemplate.query(sql, this::mapRowToUser, ids.toArray()));
+        CompletableFuture<Map<Long, Set<Long>>> friends = session
+                .<Long, Set<Long>>loader(friendshipRepository::findFriendsIds)
+                .loadMany(ids);
+        CompletableFuture<Map<Long, Set<Long>>> likedFilms = session
+                .<Long, Set<Long>>loader(likesRepository::findLikedFilmsByUserIds)
+                .loadMany(ids);
+        session.dispatch();
+
+        Map<Long, User> users = rows.join().stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
+        List<User> orderedUsers = ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        orderedUsers.forEach(user -> setRelations(user, friends.join(), likedFilms.join()));
+
+        return orderedUsers;
+    }
+
+    public List<User> findPage(Long after, int limit) {
+        String sql = USERS_SQL + " where u.id > ? order by u.id limit ?";
+
+        List<User> users = jdbcTemplate.query(sql, this::mapRowToUser, after, limit);
+        setRelations(users);
+
+        return users;
+    }
+
+    public List<User> findFriends(Long id) {
+        String sql = USERS_SQL + " join friendship f on f.friend_id = u.id where f.id = ? order by u.id";
+
+        List<User> friends = jdbcTemplate.query(sql, this::mapRowToUser, id);
+        setRelations(friends);
+
+        return friends;
+    }
+
+    public List<User> findCommonFriends(Long id, Long otherId) {
+        String sql = USERS_SQL + " join friendship f1 on f1.friend_id = u.id " +
+                "join friendship f2 on f2.friend_id = u.id where f1.id = ? and f2.id = ? order by u.id";
+
+        List<User> friends = jdbcTemplate.query(sql, this::mapRowToUser, id, otherId);
+        setRelations(friends);
+
+        return friends;
+    }
+
+    public void streamAll(Consumer<User> action) {
+        long after = 0;
+        List<User> page;
+
+        do {
+            page = findPage(after, STREAM_CHUNK_SIZE);
+            page.forEach(action);
+            after = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+        } while (page.size() == STREAM_CHUNK_SIZE);
     }
 
     public User update(User user) {
-        String sql = "update users set email = ?, login = ?, name = ?, birthday = ? where id = ?";
+        String sql = "update users set email = ?, login = ?, name = ?, birthday = ?, version = version + 1 " +
+                "where id = ?";
 
-        jdbcTemplate.update(sql,
+        int updated = jdbcTemplate.update(sql,
                 user.getEmail(),
                 user.getLogin(),
                 user.getName(),
                 user.getBirthday(),
                 user.getId());
 
-        return findOne(user.getId());
+        return updated == 0 ? null : findOne(user.getId());
+    }
+
+    public void touch(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        String sql = "update users set version = version + 1 where id in (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+
+        jdbcTemplate.update(sql, ids.toArray());
     }
 
+    @Transactional
     public boolean delete(Long id) {
+        String friendsSql = "update users set version = version + 1 where id in " +
+                "(select id from friendship where friend_id = ?)";
+        String likedFilmsSql = "update films set rate = rate - 1, version = version + 1 where id in " +
+                "(select film_id from likes where user_id = ?)";
         String sql = "delete from users where id = ?";
 
+        jdbcTemplate.update(friendsSql, id);
+        jdbcTemplate.update(likedFilmsSql, id);
         return jdbcTemplate.update(sql, id) > 0;
     }
 
+    private void setRelations(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = users.stream()
+                .map(User::getId)
+                .collect(Collectors.toList());
+        BatchLoader.Session session = batchLoader.session();
+        CompletableFuture<Map<Long, Set<Long>>> friends = session
+                .<Long, Set<Long>>loader(friendshipRepository::findFriendsIds)
+                .loadMany(ids);
+        CompletableFuture<Map<Long, Set<Long>>> likedFilms = session
+                .<Long, Set<Long>>loader(likesRepository::findLikedFilmsByUserIds)
+                .loadMany(ids);
+        session.dispatch();
+
+        users.forEach(user -> setRelations(user, friends.join(), likedFilms.join()));
+    }
+
+    private void setRelations(User user, Map<Long, Set<Long>> friends, Map<Long, Set<Long>> likedFilms) {
+        user.setFriends(friends.getOrDefault(user.getId(), new LinkedHashSet<>()));
+        user.setLikedFilms(likedFilms.getOrDefault(user.getId(), new LinkedHashSet<>()));
+    }
+
     private User mapRowToUser(ResultSet resultSet, int rowNum) throws SQLException {
         return User.builder()
                 .id(resultSet.getLong("id"))
@@ -78,8 +279,6 @@ public class UsersRepository {
                 .login(resultSet.getString("login"))
                 .name(resultSet.getString("name"))
                 .birthday(resultSet.getDate("birthday").toLocalDate())
-                .friends(friendshipRepository.findFriendsIds(resultSet.getLong("id")))
-                .likedFilms(likesRepository.findLikedFilmsByUserId(resultSet.getLong("id")))
                 .build();
     }
 }
@@ -0,0 +1,281 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.repository.GenreRepository;
+import ru.yandex.practicum.filmorate.repository.MpaRepository;
+import ru.yandex.practicum.filmorate.storage.FilmDiscoveryIndex;
+import ru.yandex.practicum.filmorate.storage.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class BulkService {
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final FilmService filmService;
+    private final UserService userService;
+    private final LikesIndex likesIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmDiscoveryIndex discoveryIndex;
+    private final GenreRepository genreRepository;
+    private final MpaRepository mpaRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final EventLog eventLog;
+    private final ObjectMapper objectMapper;
+    private final SpringValidatorAdapter validator;
+    private final int chunkSize;
+
+    @Autowired
+    public BulkService(FilmStorage filmStorage, UserStorage userStorage, FilmService filmService,
+                       UserService userService, LikesIndex likesIndex,
+                       FilmSearchIndex searchIndex, FilmDiscoveryIndex discoveryIndex,
+                       GenreRepository genreRepository, MpaRepository mpaRepository,
+                       TransactionTemplate transactionTemplate, EventLog eventLog, ObjectMapper objectMapper,
+                       Validator validator, @Value("${filmorate.bulk.chunk-size:1000}") int chunkSize) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.filmService = filmService;
+        this.userService = userService;
+        this.likesIndex = likesIndex;
+        this.searchIndex = searchIndex;
+        this.discoveryIndex = discoveryIndex;
+        this.genreRepository = genreRepository;
+        this.mpaRepository = mpaRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventLog = eventLog;
+        this.objectMapper = objectMapper;
+        this.validator = new SpringValidatorAdapter(validator);
+        this.chunkSize = chunkSize;
+    }
+
+    public ImportResult importFilms(InputStream body) throws IOException {
+        return importRows(body, Film.class, this::validateFilm, (rows, result) -> {
+            List<Film> created = filmStorage.createAll(values(rows));
+            afterCommit(() -> {
+                searchIndex.addAll(created);
+                discoveryIndex.addAll(created);
+            });
+            result.addImported(rows.size());
+        });
+    }
+
+    public ImportResult importUsers(InputStream body) throws IOException {
+        return importRows(body, User.class, user -> userService.prepareForCreate(user, validate(user)),
+                (rows, result) -> {
+                    userStorage.createAll(values(rows));
+                    result.addImported(rows.size());
+                });
+    }
+
+    public ImportResult importLikes(InputStream body) throws IOException {
+        return importRows(body, Like.class, like -> {
+            if (like.getUserId() == null || like.getFilmId() == null) {
+                throw new ValidationException("Не указаны userId и filmId!");
+            }
+        }, (rows, result) -> {
+            Set<Long> users = userStorage.getExistingIds(rows.stream()
+                    .map(row -> row.value.getUserId())
+                    .collect(Collectors.toSet()));
+            Set<Long> films = filmStorage.getExistingIds(rows.stream()
+                    .map(row -> row.value.getFilmId())
+                    .collect(Collectors.toSet()));
+
+            List<Row<Like>> accepted = new ArrayList<>();
+            rows.forEach(row -> {
+                if (!films.contains(row.value.getFilmId())) {
+                    result.addError(row.line, "Фильм с id = " + row.value.getFilmId() + " не найден!");
+                } else if (!users.contains(row.value.getUserId())) {
+                    result.addError(row.line, "Пользователь с id = " + row.value.getUserId() + " не найден!");
+                } else {
+                    accepted.add(row);
+                }
+            });
+
+            List<Like> added = filmStorage.addLikes(values(accepted));
+            userStorage.touch(added.stream()
+                    .map(Like::getUserId)
+                    .collect(Collectors.toSet()));
+            afterCommit(() -> {
+                likesIndex.addAll(added);
+                searchIndex.changeRates(added, 1);
+                discoveryIndex.changeRates(added, 1);
+            });
+            added.forEach(like -> eventLog.append(like.getUserId(), like.getFilmId(), Event.EventType.LIKE,
+                    Event.Operation.ADD));
+            result.addImported(added.size());
+        });
+    }
+
+    public ImportResult importFriends(InputStream body) throws IOException {
+        return importRows(body, Friendship.class, friendship -> {
+            if (friendship.getId() == null || friendship.getFriendId() == null) {
+                throw new ValidationException("Не указаны id и friendId!");
+            }
+        }, (rows, result) -> {
+            Set<Long> ids = new HashSet<>();
+            rows.forEach(row -> {
+                ids.add(row.value.getId());
+                ids.add(row.value.getFriendId());
+            });
+            Set<Long> users = userStorage.getExistingIds(ids);
+
+            List<Friendship> accepted = new ArrayList<>();
+            rows.forEach(row -> {
+                if (!users.contains(row.value.getId())) {
+                    result.addError(row.line, "Пользователь с id = " + row.value.getId() + " не найден!");
+                } else if (!users.contains(row.value.getFriendId())) {
+                    result.addError(row.line, "Пользователь с id = " + row.value.getFriendId() + " не найден!");
+                } else {
+                    row.value.setStatus(Friendship.UNCONFIRMED_STATUS);
+                    accepted.add(row.value);
+                }
+            });
+
+            List<Friendship> added = userStorage.addFriends(accepted);
+            userStorage.touch(added.stream()
+                    .map(Friendship::getId)
+                    .collect(Collectors.toSet()));
+            added.forEach(friendship -> eventLog.append(friendship.getId(), friendship.getFriendId(),
+                    Event.EventType.FRIEND, Event.Operation.ADD));
+            result.addImported(added.size());
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void validateFilm(Film film) throws ValidationException {
+        filmService.validate(film, validate(film));
+
+        if (film.getMpa() == null || !mpaRepository.exists(film.getMpa().getId())) {
+            throw new ValidationException("MPA с id = " + (film.getMpa() == null ? null : film.getMpa().getId()) +
+                    " не найден!");
+        }
+
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                if (!genreRepository.exists(genre.getId())) {
+                    throw new ValidationException("Жанр с id = " + genre.getId() + " не найден!");
+                }
+            }
+        }
+    }
+
+    private BindingResult validate(Object target) {
+        BindingResult errors = new BeanPropertyBindingResult(target, target.getClass().getSimpleName());
+        validator.validate(target, errors);
+        return errors;
+    }
+
+    private <T> ImportResult importRows(InputStream body, Class<T> type, Consumer<T> rowValidator,
+                                        BiConsumer<List<Row<T>>, ImportResult> chunkWriter) throws IOException {
+        ImportResult result = new ImportResult();
+        List<Row<T>> chunk = new ArrayList<>(chunkSize);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            long lineNumber = 0;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                try {
+                    T value = objectMapper.readValue(line, type);
+                    rowValidator.accept(value);
+                    chunk.add(new Row<>(lineNumber, value));
+                } catch (JsonProcessingException e) {
+                    result.addError(lineNumber, "Некорректный JSON: " + e.getOriginalMessage());
+                } catch (RuntimeException e) {
+                    result.addError(lineNumber, e.getMessage());
+                }
+
+                if (chunk.size() == chunkSize) {
+                    writeChunk(chunk, result, chunkWriter);
+                    chunk.clear();
+                }
+            }
+        }
+
+        writeChunk(chunk, result, chunkWriter);
+        return result;
+    }
+
+    private <T> void writeChunk(List<Row<T>> chunk, ImportResult result,
+                                BiConsumer<List<Row<T>>, ImportResult> chunkWriter) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        ImportResult chunkResult = new ImportResult();
+        try {
+            transactionTemplate.executeWithoutResult(status -> chunkWriter.accept(chunk, chunkResult));
+            result.merge(chunkResult);
+        } catch (DataAccessException e) {
+            log.warn("Не удалось записать строки " + chunk.get(0).line + "-" + chunk.get(chunk.size() - 1).line +
+                    ": " + e.getMostSpecificCause().getMessage());
+            chunk.forEach(row -> result.addError(row.line, "Ошибка записи: " + e.getMostSpecificCause().getMessage()));
+        }
+    }
+
+    private static <T> List<T> values(List<Row<T>> rows) {
+        return rows.stream()
+                .map(row -> row.value)
+                .collect(Collectors.toList());
+    }
+
+    @AllArgsConstructor
+    private static class Row<T> {
+        private final long line;
+        private final T value;
+    }
+}
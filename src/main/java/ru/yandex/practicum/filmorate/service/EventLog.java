@@ -0,0 +1,276 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.repository.EventsRepository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Slf4j
+@Component
+public class EventLog {
+    private static final int REPLAY_PAGE_SIZE = 1000;
+    private static final int DELIVERY_SHUTDOWN_SECONDS = 5;
+
+    private final EventsRepository eventsRepository;
+    private final int batchSize;
+    private final long sseTimeout;
+    private final int maxPending;
+    private final ExecutorService deliveryExecutor;
+    private final ConcurrentLinkedDeque<Event> pending = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public EventLog(EventsRepository eventsRepository,
+                    @Value("${filmorate.events.batch-size:500}") int batchSize,
+                    @Value("${filmorate.events.sse-timeout-ms:1800000}") long sseTimeout,
+                    @Value("${filmorate.events.max-pending:100000}") int maxPending,
+                    @Value("${filmorate.events.delivery-threads:2}") int deliveryThreads) {
+        this.eventsRepository = eventsRepository;
+        this.batchSize = batchSize;
+        this.sseTimeout = sseTimeout;
+        this.maxPending = maxPending;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.deliveryExecutor = Executors.newFixedThreadPool(deliveryThreads, task -> {
+            Thread thread = new Thread(task, "event-delivery-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void append(Long userId, Long entityId, Event.EventType eventType, Event.Operation operation) {
+        Event event = Event.builder()
+                .userId(userId)
+                .entityId(entityId)
+                .eventType(eventType)
+                .operation(operation)
+                .timestamp(System.currentTimeMillis())
+                .build();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(event);
+                }
+            });
+        } else {
+            enqueue(event);
+        }
+    }
+
+    public List<Event> findPage(Long userId, Long after, int limit) {
+        flush();
+        return eventsRepository.findPage(userId, after, limit);
+    }
+
+    public SseEmitter subscribe(Long userId, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(sseTimeout);
+        Subscriber subscriber = new Subscriber(emitter, lastEventId == null ? 0 : lastEventId);
+        Set<Subscriber> userSubscribers = subscribers.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet());
+
+        emitter.onCompletion(() -> userSubscribers.remove(subscriber));
+        emitter.onTimeout(() -> userSubscribers.remove(subscriber));
+        emitter.onError(e -> userSubscribers.remove(subscriber));
+
+        userSubscribers.add(subscriber);
+        if (lastEventId != null) {
+            flush();
+            subscriber.sending.lock();
+            try {
+                List<Event> missed;
+                long after = lastEventId;
+                do {
+                    missed = eventsRepository.findPage(userId, after, REPLAY_PAGE_SIZE);
+                    for (Event event : missed) {
+                        subscriber.send(event);
+                        after = event.getEventId();
+                    }
+                } while (missed.size() == REPLAY_PAGE_SIZE && !subscriber.closed);
+                subscriber.live = true;
+            } finally {
+                subscriber.sending.unlock();
+            }
+        } else {
+            subscriber.live = true;
+        }
+        subscriber.deliver();
+
+        if (subscriber.closed) {
+            userSubscribers.remove(subscriber);
+        }
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.events.flush-interval-ms:100}")
+    public void flush() {
+        Set<Subscriber> notified = new HashSet<>();
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            List<Event> batch = new ArrayList<>();
+            for (Event event = pending.poll(); event != null; event = pending.poll()) {
+                batch.add(event);
+            }
+            pendingCount.addAndGet(-batch.size());
+
+            try {
+                eventsRepository.saveAll(batch);
+            } catch (RuntimeException e) {
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    batch.get(i).setEventId(null);
+                    pending.addFirst(batch.get(i));
+                }
+                pendingCount.addAndGet(batch.size());
+                dropOverflow();
+                throw e;
+            }
+            publish(batch, notified);
+            log.debug("Записано событий: " + batch.size());
+        }
+
+        notified.forEach(this::dispatch);
+    }
+
+    @PreDestroy
+    public void drain() {
+        flush();
+        deliveryExecutor.shutdown();
+        try {
+            if (!deliveryExecutor.awaitTermination(DELIVERY_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                deliveryExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            deliveryExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        subscribers.values().forEach(userSubscribers -> userSubscribers.forEach(subscriber ->
+                subscriber.emitter.complete()));
+    }
+
+    private void enqueue(Event event) {
+        pending.add(event);
+        if (pendingCount.incrementAndGet() > maxPending) {
+            dropOverflow();
+        }
+        if (pendingCount.get() >= batchSize) {
+            try {
+                flush();
+            } catch (DataAccessException e) {
+                log.warn("Не удалось записать события, они будут записаны повторно: " +
+                        e.getMostSpecificCause().getMessage());
+            }
+        }
+    }
+
+    private void dispatch(Subscriber subscriber) {
+        try {
+            deliveryExecutor.execute(subscriber::deliver);
+        } catch (RejectedExecutionException e) {
+            subscriber.deliver();
+        }
+    }
+
+    private void dropOverflow() {
+        int dropped = 0;
+        while (pendingCount.get() > maxPending && pending.pollFirst() != null) {
+            pendingCount.decrementAndGet();
+            dropped++;
+        }
+        if (dropped > 0) {
+            log.warn("Очередь событий переполнена, отброшено старых событий: " + dropped);
+        }
+    }
+
+    private void publish(List<Event> events, Set<Subscriber> notified) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        for (Event event : events) {
+            Set<Subscriber> userSubscribers = subscribers.get(event.getUserId());
+            if (userSubscribers == null) {
+                continue;
+            }
+
+            userSubscribers.forEach(subscriber -> {
+                if (subscriber.closed) {
+                    userSubscribers.remove(subscriber);
+                } else {
+                    subscriber.outbox.add(event);
+                    notified.add(subscriber);
+                }
+            });
+        }
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final Queue<Event> outbox = new ConcurrentLinkedQueue<>();
+        private final ReentrantLock sending = new ReentrantLock();
+        private long lastEventId;
+        private volatile boolean live;
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter, long lastEventId) {
+            this.emitter = emitter;
+            this.lastEventId = lastEventId;
+        }
+
+        private void deliver() {
+            while (live && !outbox.isEmpty() && sending.tryLock()) {
+                try {
+                    for (Event event = outbox.poll(); event != null; event = outbox.poll()) {
+                        send(event);
+                    }
+                } finally {
+                    sending.unlock();
+                }
+            }
+        }
+
+        private void send(Event event) {
+            if (closed || event.getEventId() <= lastEventId) {
+                return;
+            }
+
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(event.getEventId()))
+                        .name("feed")
+                        .data(event));
+                lastEventId = event.getEventId();
+            } catch (IOException | IllegalStateException e) {
+                closed = true;
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
@@ -2,97 +2,229 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import ru.yandex.practicum.filmorate.exception.*;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.repository.DictionaryVersion;
+import ru.yandex.practicum.filmorate.repository.GenreMask;
 import ru.yandex.practicum.filmorate.repository.GenreRepository;
-import ru.yandex.practicum.filmorate.repository.LikesRepository;
+import ru.yandex.practicum.filmorate.repository.InstanceEpoch;
 import ru.yandex.practicum.filmorate.repository.MpaRepository;
+import ru.yandex.practicum.filmorate.storage.FilmDiscoveryIndex;
+import ru.yandex.practicum.filmorate.storage.FilmSearchIndex;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class FilmService {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int FIRST_FILM_YEAR = 1895;
+    private static final int LAST_FILM_YEAR = 9999;
+    private static final String SEARCH_BY_TITLE = "title";
+    private static final String SEARCH_BY_DESCRIPTION = "description";
+    private static final String GENRES_ANY = "any";
+    private static final String GENRES_ALL = "all";
+
     private final FilmStorage filmStorage;
-    private final UserService userService;
-    private final LikesRepository likesRepository;
+    private final UserStorage userStorage;
     private final GenreRepository genreRepository;
     private final MpaRepository mpaRepository;
+    private final LikeBuffer likeBuffer;
+    private final LikesIndex likesIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmDiscoveryIndex discoveryIndex;
+    private final DictionaryVersion dictionaryVersion;
+    private final InstanceEpoch instanceEpoch;
+    private final EventLog eventLog;
 
     @Autowired
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage, UserService userService,
-                       LikesRepository likesRepository, GenreRepository genreRepository, MpaRepository mpaRepository) {
+    public FilmService(FilmStorage filmStorage, UserStorage userStorage, GenreRepository genreRepository,
+                       MpaRepository mpaRepository, LikeBuffer likeBuffer, LikesIndex likesIndex,
+                       FilmSearchIndex searchIndex, FilmDiscoveryIndex discoveryIndex,
+                       DictionaryVersion dictionaryVersion, InstanceEpoch instanceEpoch, EventLog eventLog) {
         this.filmStorage = filmStorage;
-        this.userService = userService;
-        this.likesRepository = likesRepository;
+        this.userStorage = userStorage;
         this.genreRepository = genreRepository;
         this.mpaRepository = mpaRepository;
+        this.likeBuffer = likeBuffer;
+        this.likesIndex = likesIndex;
+        this.searchIndex = searchIndex;
+        this.discoveryIndex = discoveryIndex;
+        this.dictionaryVersion = dictionaryVersion;
+        this.instanceEpoch = instanceEpoch;
+        this.eventLog = eventLog;
     }
 
     public Film create(Film film, BindingResult errors) throws ValidationException {
         validate(film, errors);
-        return filmStorage.create(film);
+        Film created = filmStorage.create(film);
+        searchIndex.add(created);
+        discoveryIndex.add(created);
+        return created;
     }
 
     public Film update(Film film, BindingResult errors) throws FilmNotFoundException, ValidationException {
-        if (!filmStorage.getAll().containsKey(film.getId())) {
-            log.warn("Фильм с id = " + film.getId() + " не найден!");
-            throw new FilmNotFoundException("Фильм с id = " + film.getId() + " не найден!");
-        }
         validate(film, errors);
-        return filmStorage.update(film);
+        Film updated = filmStorage.update(film);
+        searchIndex.add(updated);
+        discoveryIndex.add(updated);
+        return updated;
     }
 
     public Film find(Long id) throws FilmNotFoundException {
-        return filmStorage.get(id);
+        return likeBuffer.applyPending(filmStorage.get(id));
+    }
+
+    public String findETag(Long id) throws FilmNotFoundException {
+        return id + "-" + filmStorage.getVersion(id) + "-" + likeBuffer.pendingDelta(id) + "-" +
+                dictionaryVersion.get() + "-" + instanceEpoch.get();
     }
 
     public Collection<Film> findAll() {
-        return filmStorage.getAll().values();
+        return likeBuffer.applyPending(filmStorage.getAll().values());
     }
 
-    public void like(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException {
-        Film film = find(id);
-        User user = userService.find(userId);
+    public List<Film> findPage(Long after, Integer limit) throws ValidationException {
+        if (limit == null) {
+            limit = DEFAULT_PAGE_SIZE;
+        }
 
-        if (user != null && !likesRepository.findLikedFilmsByUserId(userId).contains(id)) {
-            film.setRate(film.getRate() + 1);
-            filmStorage.update(film);
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            log.warn("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + "!");
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + "!");
         }
 
-        likesRepository.save(Like.builder()
-                .userId(userId)
-                .filmId(id)
-                .build());
+        return likeBuffer.applyPending(filmStorage.getPage(after == null ? 0L : after, limit));
+    }
+
+    public void streamAll(Consumer<Film> action) {
+        filmStorage.forEach(film -> action.accept(likeBuffer.applyPending(film)));
+    }
+
+    public void like(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException {
+        if (likeBuffer.isEnabled()) {
+            if (likeBuffer.add(id, userId, true)) {
+                eventLog.append(userId, id, Event.EventType.LIKE, Event.Operation.ADD);
+            }
+        } else if (filmStorage.addLike(id, userId)) {
+            userStorage.touch(List.of(userId));
+            likesIndex.add(userId, id);
+            searchIndex.changeRate(id, 1);
+            discoveryIndex.changeRate(id, 1);
+            eventLog.append(userId, id, Event.EventType.LIKE, Event.Operation.ADD);
+        }
     }
 
     public void unlike(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException {
-        Film film = find(id);
-        User user = userService.find(userId);
+        if (likeBuffer.isEnabled()) {
+            if (likeBuffer.add(id, userId, false)) {
+                eventLog.append(userId, id, Event.EventType.LIKE, Event.Operation.REMOVE);
+            }
+        } else if (filmStorage.removeLike(id, userId)) {
+            userStorage.touch(List.of(userId));
+            likesIndex.remove(userId, id);
+            searchIndex.changeRate(id, -1);
+            discoveryIndex.changeRate(id, -1);
+            eventLog.append(userId, id, Event.EventType.LIKE, Event.Operation.REMOVE);
+        }
+    }
+
+    public List<Film> findMostPopular(int count, Long genreId, Integer year, Long mpaId) throws ValidationException {
+        if (count < 0) {
+            log.warn("Количество фильмов не может быть отрицательным!");
+            throw new ValidationException("Количество фильмов не может быть отрицательным!");
+        }
+
+        if (year != null && (year < FIRST_FILM_YEAR || year > LAST_FILM_YEAR)) {
+            log.warn("Год выпуска должен быть от " + FIRST_FILM_YEAR + " до " + LAST_FILM_YEAR + "!");
+            throw new ValidationException("Год выпуска должен быть от " + FIRST_FILM_YEAR + " до " + LAST_FILM_YEAR + "!");
+        }
+
+        List<Film> films = likeBuffer.applyPending(filmStorage.getPopular(count, genreId, year, mpaId));
+        if (likeBuffer.isEnabled()) {
+            films.sort(Comparator.comparingInt(Film::getRate).reversed().thenComparing(Film::getId));
+        }
+        return films;
+    }
+
+    public List<Film> findRecommendedFilms(Long userId, int count) throws UserNotFoundException {
+        if (userStorage.getExistingIds(List.of(userId)).isEmpty()) {
+            log.warn("Пользователь с id = " + userId + " не найден!");
+            throw new UserNotFoundException("Пользователь с id = " + userId + " не найден!");
+        }
+
+        List<Long> recommended = likesIndex.recommend(userId, likeBuffer.pendingLikes(userId), count);
+        return likeBuffer.applyPending(filmStorage.getAll(recommended));
+    }
 
-        if (user != null && likesRepository.findLikedFilmsByUserId(userId).contains(id)) {
-            film.setRate(film.getRate() - 1);
-            filmStorage.update(film);
+    public List<Film> search(String query, String by, int count) throws ValidationException {
+        checkCount(count);
+
+        boolean byTitle = false;
+        boolean byDescription = false;
+        for (String field : by.split(",")) {
+            switch (field.trim().toLowerCase(Locale.ROOT)) {
+                case SEARCH_BY_TITLE:
+                    byTitle = true;
+                    break;
+                case SEARCH_BY_DESCRIPTION:
+                    byDescription = true;
+                    break;
+                default:
+                    log.warn("Неизвестное поле для поиска: " + field + "!");
+                    throw new ValidationException("Неизвестное поле для поиска: " + field + "!");
+            }
         }
 
-        likesRepository.delete(userId, id);
+        return likeBuffer.applyPending(filmStorage.getAll(searchIndex.search(query, byTitle, byDescription, count)));
     }
 
-    public List<Film> findMostPopular(int count) {
-        return findAll().stream()
-                .sorted(Comparator.comparingInt(Film::getRate).reversed())
-                .limit(count)
-                .collect(Collectors.toList());
+    public List<Film> discover(String genres, List<Long> mpaIds, Integer minRate, Integer year, int count)
+            throws ValidationException {
+        checkCount(count);
+
+        boolean allGenres = false;
+        String genreIds = genres;
+        if (genres != null && genres.contains(":")) {
+            String mode = genres.substring(0, genres.indexOf(':')).trim().toLowerCase(Locale.ROOT);
+            if (!GENRES_ANY.equals(mode) && !GENRES_ALL.equals(mode)) {
+                log.warn("Неизвестный режим подбора жанров: " + mode + "!");
+                throw new ValidationException("Неизвестный режим подбора жанров: " + mode + "!");
+            }
+            allGenres = GENRES_ALL.equals(mode);
+            genreIds = genres.substring(genres.indexOf(':') + 1);
+        }
+
+        long genreMask = 0;
+        if (genreIds != null && !genreIds.isBlank()) {
+            for (String id : genreIds.split(",")) {
+                genreMask |= GenreMask.bit(parseGenreId(id));
+            }
+        }
+
+        long mpaMask = FilmDiscoveryIndex.ANY_MPA;
+        if (mpaIds != null && !mpaIds.isEmpty()) {
+            mpaMask = 0;
+            for (Long id : mpaIds) {
+                mpaMask |= 1L << checkDiscoveryId(id, "MPA", FilmDiscoveryIndex.MAX_MPA_ID);
+            }
+        }
+
+        return likeBuffer.applyPending(filmStorage.getAll(discoveryIndex.discover(genreMask, allGenres, mpaMask,
+                minRate == null ? 0 : minRate, year == null ? 0 : year, count)));
     }
 
     public List<Genre> findAllGenres() {
@@ -119,12 +251,41 @@ public class FilmService {
         }
     }
 
-    private void validate(Film film, BindingResult errors) throws ValidationException {
-        if (film.getDescription().length() > 200) {
+    private void checkCount(int count) throws ValidationException {
+        if (count <= 0 || count > MAX_PAGE_SIZE) {
+            log.warn("Количество фильмов должно быть от 1 до " + MAX_PAGE_SIZE + "!");
+            throw new ValidationException("Количество фильмов должно быть от 1 до " + MAX_PAGE_SIZE + "!");
+        }
+    }
+
+    private long parseGenreId(String value) throws ValidationException {
+        try {
+            return checkDiscoveryId(Long.parseLong(value.trim()), "жанра", GenreMask.MAX_GENRE_ID);
+        } catch (NumberFormatException e) {
+            log.warn("Id жанра для подбора должен быть числом, получено: " + value);
+            throw new ValidationException("Id жанра для подбора должен быть числом, получено: " + value);
+        }
+    }
+
+    private long checkDiscoveryId(long id, String entity, int maxId) throws ValidationException {
+        if (id < 1 || id > maxId) {
+            log.warn("Id " + entity + " для подбора должен быть числом от 1 до " + maxId + "!");
+            throw new ValidationException("Id " + entity + " для подбора должен быть числом от 1 до " + maxId + "!");
+        }
+        return id;
+    }
+
+    void validate(Film film, BindingResult errors) throws ValidationException {
+        if (film.getDescription() != null && film.getDescription().length() > 200) {
             log.warn("Превышено максимальное кол-во символов в описании (200)!");
             throw new ValidationException("Превышено максимальное кол-во символов в описании (200)!");
         }
 
+        if (film.getReleaseDate() == null) {
+            log.warn("Не указана дата релиза!");
+            throw new ValidationException("Не указана дата релиза!");
+        }
+
         if (film.getReleaseDate().isBefore(LocalDate.of(1895, Month.DECEMBER, 28))) {
             log.warn("Указанная дата релиза раньше дня рождения кино!");
             throw new ValidationException("Указанная дата релиза раньше дня рождения кино!");
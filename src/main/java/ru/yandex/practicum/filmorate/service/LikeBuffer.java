@@ -0,0 +1,227 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.FilmDiscoveryIndex;
+import ru.yandex.practicum.filmorate.storage.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class LikeBuffer {
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final LikesIndex likesIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmDiscoveryIndex discoveryIndex;
+    private final boolean enabled;
+    private final int flushThreshold;
+    private final Map<Like, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> rateDeltas = new ConcurrentHashMap<>();
+    private final AtomicLong flushedWrites = new AtomicLong();
+
+    @Autowired
+    public LikeBuffer(FilmStorage filmStorage, UserStorage userStorage, LikesIndex likesIndex,
+                      FilmSearchIndex searchIndex, FilmDiscoveryIndex discoveryIndex,
+                      @Value("${filmorate.likes.write-behind:false}") boolean enabled,
+                      @Value("${filmorate.likes.flush-threshold:10000}") int flushThreshold) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.likesIndex = likesIndex;
+        this.searchIndex = searchIndex;
+        this.discoveryIndex = discoveryIndex;
+        this.enabled = enabled;
+        this.flushThreshold = flushThreshold;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean add(Long id, Long userId, boolean liked) throws FilmNotFoundException, UserNotFoundException {
+        Like key = Like.builder()
+                .userId(userId)
+                .filmId(id)
+                .build();
+
+        boolean[] changed = new boolean[1];
+        boolean[] resolved = new boolean[1];
+        // The stored state is read outside compute; it is retried if a flush wrote likes after the read.
+        while (!resolved[0]) {
+            long writes = flushedWrites.get();
+            Boolean storedLike = pending.containsKey(key) ? null : filmStorage.hasLike(id, userId);
+            if (Boolean.FALSE.equals(storedLike)) {
+                checkLikeParticipants(id, userId);
+            }
+
+            pending.compute(key, (like, previous) -> {
+                if (previous == null && (storedLike == null || flushedWrites.get() != writes)) {
+                    return null;
+                }
+
+                boolean stored = previous != null ? previous.stored : storedLike;
+                Pending next = new Pending(liked, stored);
+                changed[0] = (previous != null ? previous.liked : stored) != liked;
+                changeDelta(id, next.weight() - (previous == null ? 0 : previous.weight()));
+                resolved[0] = true;
+                return next;
+            });
+        }
+
+        if (pending.size() >= flushThreshold) {
+            flush();
+        }
+        return changed[0];
+    }
+
+    public Film applyPending(Film film) {
+        Integer delta = rateDeltas.get(film.getId());
+        if (delta != null) {
+            film.setRate(film.getRate() + delta);
+        }
+        return film;
+    }
+
+    public int pendingDelta(Long filmId) {
+        return rateDeltas.getOrDefault(filmId, 0);
+    }
+
+    public Map<Long, Boolean> pendingLikes(Long userId) {
+        Map<Long, Boolean> films = new HashMap<>();
+        pending.forEach((like, value) -> {
+            if (value.weight() != 0 && like.getUserId().equals(userId)) {
+                films.put(like.getFilmId(), value.liked);
+            }
+        });
+        return films;
+    }
+
+    public <T extends Collection<Film>> T applyPending(T films) {
+        if (!rateDeltas.isEmpty()) {
+            films.forEach(this::applyPending);
+        }
+        return films;
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.likes.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<Like, Pending> batch = new HashMap<>(pending);
+        List<Like> liked = new ArrayList<>();
+        List<Like> unliked = new ArrayList<>();
+        List<Like> unchanged = new ArrayList<>();
+        batch.forEach((like, value) -> {
+            if (value.weight() > 0) {
+                liked.add(like);
+            } else if (value.weight() < 0) {
+                unliked.add(like);
+            } else {
+                unchanged.add(like);
+            }
+        });
+
+        rebase(batch, unchanged);
+        write(batch, liked, filmStorage::addLikes, 1);
+        write(batch, unliked, filmStorage::removeLikes, -1);
+        log.debug("Записано лайков: " + liked.size() + ", удалено: " + unliked.size());
+    }
+
+    @PreDestroy
+    public void drain() {
+        flush();
+    }
+
+    private void checkLikeParticipants(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException {
+        if (filmStorage.getExistingIds(List.of(id)).isEmpty()) {
+            log.warn("Фильм с id = " + id + " не найден!");
+            throw new FilmNotFoundException("Фильм с id = " + id + " не найден!");
+        }
+
+        if (userStorage.getExistingIds(List.of(userId)).isEmpty()) {
+            log.warn("Пользователь с id = " + userId + " не найден!");
+            throw new UserNotFoundException("Пользователь с id = " + userId + " не найден!");
+        }
+    }
+
+    private void write(Map<Like, Pending> batch, List<Like> likes, UnaryOperator<List<Like>> writer, int delta) {
+        if (likes.isEmpty()) {
+            return;
+        }
+
+        List<Like> written = writer.apply(likes);
+        if (delta > 0) {
+            likesIndex.addAll(written);
+        } else {
+            likesIndex.removeAll(written);
+        }
+        searchIndex.changeRates(written, delta);
+        discoveryIndex.changeRates(written, delta);
+        flushedWrites.incrementAndGet();
+        rebase(batch, likes);
+        userStorage.touch(written.stream()
+                .map(Like::getUserId)
+                .collect(Collectors.toSet()));
+    }
+
+    private void rebase(Map<Like, Pending> batch, List<Like> likes) {
+        likes.forEach(like -> {
+            Pending flushed = batch.get(like);
+            pending.compute(like, (key, current) -> {
+                if (current == null) {
+                    return null;
+                }
+
+                Pending rebased = current == flushed ? null : new Pending(current.liked, flushed.liked);
+                if (rebased != null && rebased.weight() == 0) {
+                    rebased = null;
+                }
+                changeDelta(like.getFilmId(), (rebased == null ? 0 : rebased.weight()) - current.weight());
+                return rebased;
+            });
+        });
+    }
+
+    private void changeDelta(Long filmId, int change) {
+        if (change != 0) {
+            rateDeltas.compute(filmId, (id, delta) -> {
+                int value = (delta == null ? 0 : delta) + change;
+                return value == 0 ? null : value;
+            });
+            discoveryIndex.changeRate(filmId, change);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Pending {
+        private final boolean liked;
+        private final boolean stored;
+
+        private int weight() {
+            return liked == stored ? 0 : (liked ? 1 : -1);
+        }
+    }
+}
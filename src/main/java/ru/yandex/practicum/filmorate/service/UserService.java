@@ -2,49 +2,44 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
-import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.repository.FriendshipRepository;
+import ru.yandex.practicum.filmorate.repository.InstanceEpoch;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class UserService {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final UserStorage userStorage;
-    private final FriendshipRepository friendshipRepository;
+    private final EventLog eventLog;
+    private final InstanceEpoch instanceEpoch;
 
     @Autowired
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage, FriendshipRepository friendshipRepository) {
+    public UserService(UserStorage userStorage, EventLog eventLog, InstanceEpoch instanceEpoch) {
         this.userStorage = userStorage;
-        this.friendshipRepository = friendshipRepository;
+        this.eventLog = eventLog;
+        this.instanceEpoch = instanceEpoch;
     }
 
     public User create(User user, BindingResult errors) throws ValidationException {
-        validate(user, errors);
-        if (user.getName() == null || user.getName().isBlank()) {
-            user.setName(user.getLogin());
-        }
+        prepareForCreate(user, errors);
         return userStorage.create(user);
     }
 
     public User update(User user, BindingResult errors) throws UserNotFoundException, ValidationException {
-        if (!userStorage.getAll().containsKey(user.getId())) {
-            log.warn("Пользователь с id = " + user.getId() + " не найден!");
-            throw new UserNotFoundException("Пользователь с id = " + user.getId() + " не найден!");
-        }
         validate(user, errors);
         userStorage.update(user);
         return user;
@@ -54,63 +49,99 @@ public class UserService {
         return userStorage.getAll().values();
     }
 
+    public List<User> findPage(Long after, Integer limit) throws ValidationException {
+        if (limit == null) {
+            limit = DEFAULT_PAGE_SIZE;
+        }
+
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            log.warn("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + "!");
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + "!");
+        }
+
+        return userStorage.getPage(after == null ? 0L : after, limit);
+    }
+
+    public void streamAll(Consumer<User> action) {
+        userStorage.forEach(action);
+    }
+
     public User find(Long id) throws UserNotFoundException {
         return userStorage.get(id);
     }
 
+    public String findETag(Long id) throws UserNotFoundException {
+        return id + "-" + userStorage.getVersion(id) + "-" + instanceEpoch.get();
+    }
+
     public void addFriend(Long id, Long friendId) throws UserNotFoundException {
-        if (userStorage.getAll().containsKey(friendId)) {
-            friendshipRepository.save(Friendship.builder()
-                    .id(id)
-                    .friendId(friendId)
-                    .status("неподтвержденная")
-                    .build());
-
-            if (friendshipRepository.exists(friendId, id)) {
-                friendshipRepository.update(Friendship.builder()
-                        .id(id)
-                        .friendId(friendId)
-                        .status("подтвержденная")
-                        .build());
-
-                friendshipRepository.update(Friendship.builder()
-                        .id(friendId)
-                        .friendId(id)
-                        .status("подтвержденная")
-                        .build());
-            }
-        } else {
-            log.warn("Пользователь с id = " + friendId + " не найден!");
-            throw new UserNotFoundException("Пользователь с id = " + friendId + " не найден!");
+        if (userStorage.addFriend(id, friendId)) {
+            userStorage.touch(List.of(id));
+            eventLog.append(id, friendId, Event.EventType.FRIEND, Event.Operation.ADD);
         }
     }
 
     public void removeFriend(Long id, Long friendId) {
-        friendshipRepository.delete(id, friendId);
+        if (userStorage.removeFriend(id, friendId)) {
+            userStorage.touch(List.of(id));
+            eventLog.append(id, friendId, Event.EventType.FRIEND, Event.Operation.REMOVE);
+        }
     }
 
-    public Set<User> findFriends(Long id) throws UserNotFoundException {
-        Set<User> friends = new LinkedHashSet<>();
-        Set<Long> friendsIds = friendshipRepository.findFriendsIds(id);
+    public List<Event> findFeed(Long id, Long after, Integer limit) throws UserNotFoundException,
+            ValidationException {
+        if (limit == null) {
+            limit = DEFAULT_PAGE_SIZE;
+        }
 
-        for (Long friendId : friendsIds) {
-            friends.add(userStorage.get(friendId));
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            log.warn("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + "!");
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + "!");
         }
 
-        return friends;
+        checkExists(id);
+        return eventLog.findPage(id, after == null ? 0L : after, limit);
+    }
+
+    public SseEmitter subscribeToFeed(Long id, Long lastEventId) throws UserNotFoundException {
+        checkExists(id);
+        return eventLog.subscribe(id, lastEventId);
+    }
+
+    public List<User> findFriends(Long id) throws UserNotFoundException {
+        return userStorage.getFriends(id);
     }
 
     public List<User> findCommonFriends(Long id, Long otherId) throws UserNotFoundException {
-        Set<User> firstUserFriends = new HashSet<>(findFriends(id));
-        Set<User> secondUserFriends = new HashSet<>(findFriends(otherId));
+        return userStorage.getCommonFriends(id, otherId);
+    }
+
+    public List<User> findRecommendedFriends(Long id, int count) throws UserNotFoundException, ValidationException {
+        if (count <= 0 || count > MAX_PAGE_SIZE) {
+            log.warn("Количество пользователей должно быть от 1 до " + MAX_PAGE_SIZE + "!");
+            throw new ValidationException("Количество пользователей должно быть от 1 до " + MAX_PAGE_SIZE + "!");
+        }
 
-        firstUserFriends.retainAll(secondUserFriends);
+        checkExists(id);
+        return userStorage.getAll(userStorage.getRecommendedFriendIds(id, count));
+    }
+
+    void prepareForCreate(User user, BindingResult errors) throws ValidationException {
+        validate(user, errors);
+        if (user.getName() == null || user.getName().isBlank()) {
+            user.setName(user.getLogin());
+        }
+    }
 
-        return new ArrayList<>(firstUserFriends);
+    private void checkExists(Long id) throws UserNotFoundException {
+        if (userStorage.getExistingIds(List.of(id)).isEmpty()) {
+            log.warn("Пользователь с id = " + id + " не найден!");
+            throw new UserNotFoundException("Пользователь с id = " + id + " не найден!");
+        }
     }
 
     private void validate(User user, BindingResult errors) throws ValidationException {
-        if (user.getLogin().contains(" ")) {
+        if (user.getLogin() != null && user.getLogin().contains(" ")) {
             log.warn("Неверный формат login! Поле не должно содержать пробелы!");
             throw new ValidationException("Неверный формат login! Поле не должно содержать пробелы!");
         }
@@ -1,21 +1,41 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.repository.FilmsRepository;
+import ru.yandex.practicum.filmorate.repository.LikesRepository;
+import ru.yandex.practicum.filmorate.repository.UsersRepository;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Component("filmDbStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
 public class FilmDbStorage implements FilmStorage {
     private final FilmsRepository filmsRepository;
+    private final LikesRepository likesRepository;
+    private final UsersRepository usersRepository;
+    private final LikesIndex likesIndex;
 
     @Autowired
-    public FilmDbStorage(FilmsRepository filmsRepository) {
+    public FilmDbStorage(FilmsRepository filmsRepository, LikesRepository likesRepository,
+                         UsersRepository usersRepository, LikesIndex likesIndex) {
         this.filmsRepository = filmsRepository;
+        this.likesRepository = likesRepository;
+        this.usersRepository = usersRepository;
+        this.likesIndex = likesIndex;
     }
 
     @Override
@@ -23,26 +43,33 @@ public class FilmDbStorage implements FilmStorage {
         return filmsRepository.save(film);
     }
 
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return filmsRepository.saveAll(films);
+    }
+
     @Override
     public Film update(Film film) throws FilmNotFoundException {
-        if (filmsRepository.exists(film.getId())) {
-            return filmsRepository.update(film);
-        } else {
+        Film updated = filmsRepository.update(film);
+        if (updated == null) {
             throw new FilmNotFoundException("Фильм с id = " + film.getId() + " не найден!");
         }
+        return updated;
     }
 
     public void delete(Long id) {
-        filmsRepository.delete(id);
+        if (filmsRepository.delete(id)) {
+            likesIndex.removeFilm(id);
+        }
     }
 
     @Override
     public Film get(Long id) throws FilmNotFoundException {
-        if (filmsRepository.exists(id)) {
-            return filmsRepository.findOne(id);
-        } else {
+        Film film = filmsRepository.findOne(id);
+        if (film == null) {
             throw new FilmNotFoundException("Фильм с id = " + id + " не найден!");
         }
+        return film;
     }
 
     @Override
@@ -52,4 +79,107 @@ public class FilmDbStorage implements FilmStorage {
                 .forEach(film -> allFilms.put(film.getId(), film));
         return allFilms;
     }
+
+    @Override
+    public List<Film> getAll(List<Long> ids) {
+        return filmsRepository.findAll(ids);
+    }
+
+    @Override
+    @Transactional
+    public boolean addLike(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException {
+        try {
+            if (likesRepository.saveIfAbsent(Like.builder()
+                    .userId(userId)
+                    .filmId(id)
+                    .build())) {
+                filmsRepository.changeRate(id, 1);
+                return true;
+            }
+            return false;
+        } catch (DataIntegrityViolationException e) {
+            checkLikeParticipants(id, userId);
+            throw e;
+        }
+    }
+
+    @Override
+    @Transactional
+    public boolean removeLike(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException {
+        if (likesRepository.delete(userId, id)) {
+            filmsRepository.changeRate(id, -1);
+            return true;
+        }
+        checkLikeParticipants(id, userId);
+        return false;
+    }
+
+    @Override
+    public boolean hasLike(Long id, Long userId) {
+        return likesRepository.exists(userId, id);
+    }
+
+    @Override
+    @Transactional
+    public List<Like> addLikes(List<Like> likes) {
+        List<Like> added = likesRepository.saveAllIfAbsent(likes);
+        filmsRepository.changeRates(added.stream()
+                .collect(Collectors.groupingBy(Like::getFilmId, Collectors.summingInt(like -> 1))));
+
+        return added;
+    }
+
+    @Override
+    @Transactional
+    public List<Like> removeLikes(List<Like> likes) {
+        List<Like> removed = likesRepository.deleteAll(likes);
+        filmsRepository.changeRates(removed.stream()
+                .collect(Collectors.groupingBy(Like::getFilmId, Collectors.summingInt(like -> -1))));
+
+        return removed;
+    }
+
+    @Override
+    public long getVersion(Long id) throws FilmNotFoundException {
+        Long version = filmsRepository.findVersion(id);
+        if (version == null) {
+            throw new FilmNotFoundException("Фильм с id = " + id + " не найден!");
+        }
+        return version;
+    }
+
+    @Override
+    public Set<Long> getExistingIds(Collection<Long> ids) {
+        return filmsRepository.findExistingIds(ids);
+    }
+
+    @Override
+    public List<Film> getPage(Long after, int limit) {
+        return filmsRepository.findPage(after, limit);
+    }
+
+    @Override
+    public List<Film> getPopular(int count) {
+        return filmsRepository.findPopular(count);
+    }
+
+    @Override
+    public List<Film> getPopular(int count, Long genreId, Integer year, Long mpaId) {
+        return filmsRepository.findPopular(count, genreId, year, mpaId);
+    }
+
+    @Override
+    public void forEach(Consumer<Film> action) {
+        filmsRepository.streamAll(action);
+    }
+
+    private void checkLikeParticipants(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException {
+        if (!filmsRepository.exists(id)) {
+            throw new FilmNotFoundException("Фильм с id = " + id + " не найден!");
+        }
+
+        if (!usersRepository.exists(userId)) {
+            throw new UserNotFoundException("Пользователь с id = " + userId + " не найден!");
+        }
+    }
 }
@@ -0,0 +1,302 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.repository.GenreMask;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+@Slf4j
+@Component
+public class FilmDiscoveryIndex {
+    public static final int MAX_MPA_ID = Long.SIZE - 1;
+    public static final long ANY_MPA = -1L;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int BUFFER_SIZE = 1024;
+    private static final int ABSENT = -1;
+
+    private final FilmStorage filmStorage;
+    private final int parallelThreshold;
+    private volatile Columns columns = new Columns(INITIAL_CAPACITY);
+
+    @Autowired
+    public FilmDiscoveryIndex(FilmStorage filmStorage,
+                              @Value("${filmorate.discovery.parallel-threshold:65536}") int parallelThreshold) {
+        this.filmStorage = filmStorage;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    @PostConstruct
+    public synchronized void reload() {
+        Columns[] loaded = {new Columns(INITIAL_CAPACITY)};
+        filmStorage.forEach(film -> loaded[0] = write(loaded[0], film));
+        columns = loaded[0];
+
+        int films = 0;
+        for (int slot = 0; slot < loaded[0].size; slot++) {
+            films += loaded[0].rate[slot] == ABSENT ? 0 : 1;
+        }
+        log.info("Индекс подбора фильмов загружен: фильмов " + films);
+    }
+
+    public void add(Film film) {
+        addAll(List.of(film));
+    }
+
+    // Rows are written into a private copy that is published as a whole, so a scan never sees a half-written film.
+    public synchronized void addAll(Collection<Film> films) {
+        Columns current = new Columns(columns, columns.rate.length);
+        for (Film film : films) {
+            current = write(current, film);
+        }
+        columns = current;
+    }
+
+    // A rate is a single int updated in place: a concurrent scan sees either the old or the new rate of the film.
+    public synchronized void changeRate(Long id, int delta) {
+        Columns current = columns;
+        int slot = Math.toIntExact(id);
+        if (slot < current.size && current.rate[slot] != ABSENT) {
+            current.rate[slot] = Math.max(0, current.rate[slot] + delta);
+            columns = current;
+        }
+    }
+
+    public void changeRates(Collection<Like> likes, int delta) {
+        likes.forEach(like -> changeRate(like.getFilmId(), delta));
+    }
+
+    public List<Long> discover(long genres, boolean allGenres, long mpaIds, int minRate, int year, int count) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+
+        Columns snapshot = columns;
+        Query query = new Query(allGenres ? genres : 0, allGenres ? 0 : genres, mpaIds, Math.max(0, minRate), year);
+        long[] top;
+        if (parallelThreshold > 0 && snapshot.size >= parallelThreshold) {
+            int chunks = (snapshot.size + parallelThreshold - 1) / parallelThreshold;
+            top = IntStream.range(0, chunks)
+                    .parallel()
+                    .mapToObj(chunk -> scan(snapshot, query, chunk * parallelThreshold,
+                            Math.min(snapshot.size, (chunk + 1) * parallelThreshold), count))
+                    .reduce(new TopKeys(count), TopKeys::merge)
+                    .sorted();
+        } else {
+            top = scan(snapshot, query, 0, snapshot.size, count).sorted();
+        }
+
+        List<Long> ids = new ArrayList<>(top.length);
+        for (long key : top) {
+            ids.add((long) slot(key));
+        }
+        return ids;
+    }
+
+    private static TopKeys scan(Columns columns, Query query, int from, int to, int count) {
+        TopKeys top = new TopKeys(count);
+        long[] buffer = new long[BUFFER_SIZE];
+        int[] rates = columns.rate;
+        short[] releaseYears = columns.releaseYear;
+        byte[] mpaIds = columns.mpaId;
+        long[] genreMasks = columns.genreMask;
+        long allGenres = query.allGenres;
+        long anyGenres = query.anyGenres;
+        boolean anyGenre = anyGenres == 0;
+        long mpaMask = query.mpaIds;
+        int minRate = query.minRate;
+        int year = query.year;
+        boolean anyYear = year == 0;
+
+        long weakest = top.weakest();
+        int found = 0;
+        for (int slot = from; slot < to; slot++) {
+            int rate = rates[slot];
+            long mask = genreMasks[slot];
+            long key = key(rate, slot);
+            boolean hit = (rate >= minRate)
+                    & (key > weakest)
+                    & ((mask & allGenres) == allGenres)
+                    & (((mask & anyGenres) != 0) | anyGenre)
+                    & (((mpaMask >>> mpaIds[slot]) & 1) != 0)
+                    & ((releaseYears[slot] == year) | anyYear);
+
+            buffer[found] = key;
+            found += hit ? 1 : 0;
+            if (found == BUFFER_SIZE) {
+                top.offerAll(buffer, found);
+                weakest = top.weakest();
+                found = 0;
+            }
+        }
+        top.offerAll(buffer, found);
+        return top;
+    }
+
+    private static Columns write(Columns columns, Film film) {
+        int slot = Math.toIntExact(film.getId());
+        Columns current = columns.withSlot(slot);
+
+        current.releaseYear[slot] = film.getReleaseDate() == null ? 0 : (short) film.getReleaseDate().getYear();
+        current.mpaId[slot] = film.getMpa() == null || film.getMpa().getId() > MAX_MPA_ID ? 0 :
+                film.getMpa().getId().byteValue();
+        current.genreMask[slot] = genreMask(film.getGenres());
+        current.rate[slot] = film.getRate();
+        return current;
+    }
+
+    private static long key(int rate, int slot) {
+        return (long) rate << Integer.SIZE | (Integer.MAX_VALUE - slot);
+    }
+
+    private static int slot(long key) {
+        return Integer.MAX_VALUE - (int) key;
+    }
+
+    private static long genreMask(List<Genre> genres) {
+        long mask = 0;
+        if (genres != null) {
+            for (Genre genre : genres) {
+                mask |= GenreMask.fits(genre.getId()) ? GenreMask.bit(genre.getId()) : 0;
+            }
+        }
+        return mask;
+    }
+
+    private static class Query {
+        private final long allGenres;
+        private final long anyGenres;
+        private final long mpaIds;
+        private final int minRate;
+        private final int year;
+
+        private Query(long allGenres, long anyGenres, long mpaIds, int minRate, int year) {
+            this.allGenres = allGenres;
+            this.anyGenres = anyGenres;
+            this.mpaIds = mpaIds;
+            this.minRate = minRate;
+            this.year = year;
+        }
+    }
+
+    private static class Columns {
+        private final int[] rate;
+        private final short[] releaseYear;
+        private final byte[] mpaId;
+        private final long[] genreMask;
+        private int size;
+
+        private Columns(int capacity) {
+            rate = new int[capacity];
+            Arrays.fill(rate, ABSENT);
+            releaseYear = new short[capacity];
+            mpaId = new byte[capacity];
+            genreMask = new long[capacity];
+        }
+
+        private Columns(Columns source, int capacity) {
+            rate = Arrays.copyOf(source.rate, capacity);
+            Arrays.fill(rate, source.rate.length, capacity, ABSENT);
+            releaseYear = Arrays.copyOf(source.releaseYear, capacity);
+            mpaId = Arrays.copyOf(source.mpaId, capacity);
+            genreMask = Arrays.copyOf(source.genreMask, capacity);
+            size = source.size;
+        }
+
+        private Columns withSlot(int slot) {
+            Columns current = slot < rate.length ? this : new Columns(this, Math.max(slot + 1, rate.length * 2));
+            current.size = Math.max(current.size, slot + 1);
+            return current;
+        }
+    }
+
+    private static class TopKeys {
+        private final long[] heap;
+        private int size;
+
+        private TopKeys(int capacity) {
+            heap = new long[capacity];
+        }
+
+        private void offerAll(long[] keys, int length) {
+            for (int i = 0; i < length; i++) {
+                offer(keys[i]);
+            }
+        }
+
+        private void offer(long key) {
+            if (size < heap.length) {
+                heap[size] = key;
+                siftUp(size++);
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                siftDown(0);
+            }
+        }
+
+        private long weakest() {
+            return size < heap.length ? Long.MIN_VALUE : heap[0];
+        }
+
+        private TopKeys merge(TopKeys other) {
+            TopKeys merged = new TopKeys(heap.length);
+            merged.offerAll(heap, size);
+            merged.offerAll(other.heap, other.size);
+            return merged;
+        }
+
+        private long[] sorted() {
+            long[] keys = Arrays.copyOf(heap, size);
+            Arrays.sort(keys);
+            for (int i = 0, j = keys.length - 1; i < j; i++, j--) {
+                long key = keys[i];
+                keys[i] = keys[j];
+                keys[j] = key;
+            }
+            return keys;
+        }
+
+        private void siftUp(int index) {
+            long key = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (heap[parent] <= key) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                index = parent;
+            }
+            heap[index] = key;
+        }
+
+        private void siftDown(int index) {
+            long key = heap[index];
+            while (true) {
+                int child = index * 2 + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (key <= heap[child]) {
+                    break;
+                }
+                heap[index] = heap[child];
+                index = child;
+            }
+            heap[index] = key;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+@Slf4j
+@Component
+public class FilmSearchIndex {
+    private static final int TITLE_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    private static final int MIN_PREFIX_LENGTH = 3;
+    private static final int MAX_EXPANDED_TERMS = 64;
+    private static final Comparator<long[]> WEAKEST_FIRST = Comparator.comparingLong((long[] entry) -> entry[1])
+            .thenComparingLong(entry -> entry[2])
+            .thenComparing(Comparator.comparingLong((long[] entry) -> entry[0]).reversed());
+
+    private final FilmStorage filmStorage;
+    private final TextAnalyzer analyzer = new TextAnalyzer();
+    private final ConcurrentSkipListMap<String, Set<Long>> titleTerms = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Set<Long>> descriptionTerms = new ConcurrentSkipListMap<>();
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FilmSearchIndex(FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    @PostConstruct
+    public synchronized void reload() {
+        titleTerms.clear();
+        descriptionTerms.clear();
+        documents.clear();
+        filmStorage.forEach(this::add);
+        log.info("Поисковый индекс загружен: фильмов " + documents.size() + ", терминов " +
+                (titleTerms.size() + descriptionTerms.size()));
+    }
+
+    public synchronized void add(Film film) {
+        Document document = new Document(film.getRate(), analyzer.analyze(film.getName()),
+                analyzer.analyze(film.getDescription()));
+
+        documents.compute(film.getId(), (id, previous) -> {
+            if (previous != null) {
+                unindex(id, previous);
+            }
+            index(id, document);
+            return document;
+        });
+    }
+
+    public void addAll(Collection<Film> films) {
+        films.forEach(this::add);
+    }
+
+    public void changeRate(Long id, int delta) {
+        documents.computeIfPresent(id, (filmId, document) ->
+                new Document(document.rate + delta, document.title, document.description));
+    }
+
+    public void changeRates(Collection<Like> likes, int delta) {
+        likes.forEach(like -> changeRate(like.getFilmId(), delta));
+    }
+
+    public List<Long> search(String query, boolean byTitle, boolean byDescription, int count) {
+        Set<String> terms = analyzer.analyze(query);
+        if (terms.isEmpty() || count <= 0) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Integer> scores = new HashMap<>();
+        for (String term : terms) {
+            Map<Long, Integer> termScores = new HashMap<>();
+            if (byTitle) {
+                collect(titleTerms, term, TITLE_WEIGHT, termScores);
+            }
+            if (byDescription) {
+                collect(descriptionTerms, term, DESCRIPTION_WEIGHT, termScores);
+            }
+            termScores.forEach((id, score) -> scores.merge(id, score, Integer::sum));
+        }
+
+        List<List<Long>> byScore = new ArrayList<>();
+        scores.forEach((id, score) -> {
+            while (byScore.size() <= score) {
+                byScore.add(new ArrayList<>());
+            }
+            byScore.get(score).add(id);
+        });
+
+        List<Long> found = new ArrayList<>(Math.min(count, scores.size()));
+        for (int score = byScore.size() - 1; score > 0 && found.size() < count; score--) {
+            found.addAll(top(byScore.get(score), score, count - found.size()));
+        }
+        return found;
+    }
+
+    private List<Long> top(List<Long> ids, int score, int count) {
+        PriorityQueue<long[]> top = new PriorityQueue<>(count + 1, WEAKEST_FIRST);
+        for (Long id : ids) {
+            top.add(new long[]{id, score, rate(id)});
+            if (top.size() > count) {
+                top.poll();
+            }
+        }
+
+        List<Long> found = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            found.add(top.poll()[0]);
+        }
+        Collections.reverse(found);
+        return found;
+    }
+
+    private void collect(NavigableMap<String, Set<Long>> terms, String term, int weight,
+                         Map<Long, Integer> termScores) {
+        if (term.length() < MIN_PREFIX_LENGTH) {
+            Set<Long> films = terms.get(term);
+            if (films != null) {
+                films.forEach(id -> termScores.merge(id, weight, Math::max));
+            }
+            return;
+        }
+
+        terms.subMap(term, true, term + Character.MAX_VALUE, false).values().stream()
+                .limit(MAX_EXPANDED_TERMS)
+                .forEach(films -> films.forEach(id -> termScores.merge(id, weight, Math::max)));
+    }
+
+    private int rate(Long id) {
+        Document document = documents.get(id);
+        return document == null ? 0 : document.rate;
+    }
+
+    private void index(Long id, Document document) {
+        document.title.forEach(term -> titleTerms.computeIfAbsent(term, key -> ConcurrentHashMap.newKeySet()).add(id));
+        document.description.forEach(term -> descriptionTerms
+                .computeIfAbsent(term, key -> ConcurrentHashMap.newKeySet())
+                .add(id));
+    }
+
+    private void unindex(Long id, Document document) {
+        document.title.forEach(term -> remove(titleTerms, term, id));
+        document.description.forEach(term -> remove(descriptionTerms, term, id));
+    }
+
+    private void remove(Map<String, Set<Long>> terms, String term, Long id) {
+        Set<Long> films = terms.get(term);
+        if (films != null && films.remove(id) && films.isEmpty()) {
+            terms.remove(term);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Document {
+        private final int rate;
+        private final Set<String> title;
+        private final Set<String> description;
+    }
+}
@@ -1,16 +1,48 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     Film create(Film film);
 
+    List<Film> createAll(List<Film> films);
+
     Film update(Film film) throws FilmNotFoundException;
 
     Film get(Long id) throws FilmNotFoundException;
 
     Map<Long, Film> getAll();
+
+    List<Film> getAll(List<Long> ids);
+
+    boolean addLike(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException;
+
+    boolean removeLike(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException;
+
+    boolean hasLike(Long id, Long userId);
+
+    List<Like> addLikes(List<Like> likes);
+
+    List<Like> removeLikes(List<Like> likes);
+
+    long getVersion(Long id) throws FilmNotFoundException;
+
+    Set<Long> getExistingIds(Collection<Long> ids);
+
+    List<Film> getPage(Long after, int limit);
+
+    List<Film> getPopular(int count);
+
+    List<Film> getPopular(int count, Long genreId, Integer year, Long mpaId);
+
+    void forEach(Consumer<Film> action);
 }
@@ -0,0 +1,205 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.repository.FriendshipRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
+public class FriendGraph {
+    private static final long[] NO_FRIENDS = new long[0];
+    private static final Comparator<long[]> WEAKEST_FIRST = Comparator.comparingLong((long[] entry) -> entry[1])
+            .thenComparing(Comparator.comparingLong((long[] entry) -> entry[0]).reversed());
+
+    private final FriendshipRepository friendshipRepository;
+    private volatile Map<Long, long[]> friends = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FriendGraph(FriendshipRepository friendshipRepository) {
+        this.friendshipRepository = friendshipRepository;
+    }
+
+    @PostConstruct
+    public void reload() {
+        AdjacencyBuilder builder = new AdjacencyBuilder();
+        friendshipRepository.streamAllFriendsIds(builder);
+
+        Map<Long, long[]> loaded = new ConcurrentHashMap<>(builder.build());
+        friends = loaded;
+        log.info("Граф друзей загружен: пользователей " + loaded.size() + ", связей " + builder.edges);
+    }
+
+    public void add(Long id, Long friendId) {
+        onRollback(() -> unlink(id, friendId));
+        link(id, friendId);
+    }
+
+    public void remove(Long id, Long friendId) {
+        onRollback(() -> link(id, friendId));
+        unlink(id, friendId);
+    }
+
+    public void removeUser(Long id, Collection<Long> followerIds) {
+        long[] removed = friends.remove(id);
+        onRollback(() -> {
+            if (removed != null) {
+                friends.put(id, removed);
+            }
+            followerIds.forEach(followerId -> link(followerId, id));
+        });
+        followerIds.forEach(followerId -> unlink(followerId, id));
+    }
+
+    public List<Long> recommend(Long id, int count) {
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+
+        Map<Long, long[]> friends = this.friends;
+        long[] direct = friends.getOrDefault(id, NO_FRIENDS);
+        long[][] secondHop = new long[direct.length][];
+        int total = 0;
+        for (int i = 0; i < direct.length; i++) {
+            secondHop[i] = friends.getOrDefault(direct[i], NO_FRIENDS);
+            total += secondHop[i].length;
+        }
+
+        long[] candidates = new long[total];
+        int position = 0;
+        for (long[] hop : secondHop) {
+            System.arraycopy(hop, 0, candidates, position, hop.length);
+            position += hop.length;
+        }
+        Arrays.sort(candidates);
+
+        PriorityQueue<long[]> top = new PriorityQueue<>(count + 1, WEAKEST_FIRST);
+        for (int start = 0, end; start < candidates.length; start = end) {
+            long candidate = candidates[start];
+            end = start + 1;
+            while (end < candidates.length && candidates[end] == candidate) {
+                end++;
+            }
+
+            if (candidate == id || Arrays.binarySearch(direct, candidate) >= 0) {
+                continue;
+            }
+
+            top.add(new long[]{candidate, end - start});
+            if (top.size() > count) {
+                top.poll();
+            }
+        }
+
+        List<Long> recommended = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            recommended.add(top.poll()[0]);
+        }
+        Collections.reverse(recommended);
+
+        return recommended;
+    }
+
+    private void link(Long id, Long friendId) {
+        friends.compute(id, (userId, current) -> {
+            if (current == null) {
+                return new long[]{friendId};
+            }
+
+            int index = Arrays.binarySearch(current, friendId);
+            if (index >= 0) {
+                return current;
+            }
+
+            int insertAt = -index - 1;
+            long[] updated = new long[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, insertAt);
+            updated[insertAt] = friendId;
+            System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+            return updated;
+        });
+    }
+
+    private void unlink(Long id, Long friendId) {
+        friends.computeIfPresent(id, (userId, current) -> {
+            int index = Arrays.binarySearch(current, friendId);
+            if (index < 0) {
+                return current;
+            }
+            if (current.length == 1) {
+                return null;
+            }
+
+            long[] updated = new long[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            return updated;
+        });
+    }
+
+    // The graph is changed inside the storage transaction, while the changed rows are locked, and is put back
+    // if that transaction rolls back, so concurrent writers apply their changes in the same order as the database.
+    private void onRollback(Runnable undo) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        undo.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private static class AdjacencyBuilder implements BiConsumer<Long, Long> {
+        private final Map<Long, long[]> adjacency = new HashMap<>();
+        private long currentId;
+        private long[] current = new long[16];
+        private int size;
+        private long edges;
+
+        @Override
+        public void accept(Long id, Long friendId) {
+            if (size > 0 && id != currentId) {
+                flush();
+            }
+
+            currentId = id;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size++] = friendId;
+            edges++;
+        }
+
+        private Map<Long, long[]> build() {
+            if (size > 0) {
+                flush();
+            }
+            return adjacency;
+        }
+
+        private void flush() {
+            adjacency.put(currentId, Arrays.copyOf(current, size));
+            size = 0;
+        }
+    }
+}
@@ -1,44 +1,335 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.repository.GenreRepository;
+import ru.yandex.practicum.filmorate.repository.MpaRepository;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-@Component
+@Slf4j
+@Component("inMemoryFilmStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
 public class InMemoryFilmStorage implements FilmStorage {
-    private Map<Long, Film> films = new HashMap<>();
-    private Long counter = 0L;
+    private static final int RARE_GENRE_RATIO = 16;
 
+    private final Map<Long, Film> films = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Long> ids = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<RateKey> byRate = new ConcurrentSkipListSet<>(
+            Comparator.comparingInt((RateKey key) -> key.rate).reversed().thenComparingLong(key -> key.id));
+    private final Map<Long, Set<Long>> byGenre = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> likes = new ConcurrentHashMap<>();
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicLong counter = new AtomicLong();
+    private final InMemoryUserStorage userStorage;
+    private final GenreRepository genreRepository;
+    private final MpaRepository mpaRepository;
+    private final LikesIndex likesIndex;
+
+    @Autowired
+    public InMemoryFilmStorage(InMemoryUserStorage userStorage, GenreRepository genreRepository,
+                               MpaRepository mpaRepository, LikesIndex likesIndex) {
+        this.userStorage = userStorage;
+        this.genreRepository = genreRepository;
+        this.mpaRepository = mpaRepository;
+        this.likesIndex = likesIndex;
+        userStorage.onDelete(this::removeUserLikes);
+    }
+
+    @Override
     public Film create(Film film) {
-        film.setId(getNextId());
-        films.put(film.getId(), film);
-        return film;
+        film.setId(counter.incrementAndGet());
+        Film stored = normalize(film);
+        versions.put(stored.getId(), 0L);
+        films.put(stored.getId(), stored);
+        index(stored);
+        ids.add(stored.getId());
+        return copy(stored);
     }
 
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return films.stream()
+                .map(this::create)
+                .collect(Collectors.toList());
+    }
+
+    @Override
     public Film update(Film film) throws FilmNotFoundException {
-        if (!films.containsKey(film.getId())) {
+        Film updated = films.computeIfPresent(film.getId(), (id, stored) -> {
+            Film changed = normalize(film);
+            unindex(stored);
+            index(changed);
+            versions.merge(id, 1L, Long::sum);
+            return changed;
+        });
+
+        if (updated == null) {
+            log.warn("Фильм с id = " + film.getId() + " не найден!");
             throw new FilmNotFoundException("Фильм с id = " + film.getId() + " не найден!");
         }
-        films.put(film.getId(), film);
-        return film;
+        return copy(updated);
     }
 
+    @Override
     public Film get(Long id) throws FilmNotFoundException {
-        if (!films.containsKey(id)) {
+        return copy(find(id));
+    }
+
+    @Override
+    public Map<Long, Film> getAll() {
+        Map<Long, Film> allFilms = new LinkedHashMap<>();
+        forEach(film -> allFilms.put(film.getId(), film));
+        return allFilms;
+    }
+
+    @Override
+    public List<Film> getAll(List<Long> ids) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(this::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean addLike(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException {
+        checkLikeParticipants(id, userId);
+        if (likes(id).add(userId)) {
+            changeRate(id, 1);
+            userStorage.addLikedFilm(userId, id);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean removeLike(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException {
+        checkLikeParticipants(id, userId);
+        if (likes(id).remove(userId)) {
+            changeRate(id, -1);
+            userStorage.removeLikedFilm(userId, id);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasLike(Long id, Long userId) {
+        return likes.getOrDefault(id, Set.of()).contains(userId);
+    }
+
+    @Override
+    public List<Like> addLikes(List<Like> likes) {
+        List<Like> added = likes.stream()
+                .filter(like -> likes(like.getFilmId()).add(like.getUserId()))
+                .collect(Collectors.toList());
+
+        added.forEach(like -> {
+            changeRate(like.getFilmId(), 1);
+            userStorage.addLikedFilm(like.getUserId(), like.getFilmId());
+        });
+        return added;
+    }
+
+    @Override
+    public List<Like> removeLikes(List<Like> likes) {
+        List<Like> removed = likes.stream()
+                .filter(like -> likes(like.getFilmId()).remove(like.getUserId()))
+                .collect(Collectors.toList());
+
+        removed.forEach(like -> {
+            changeRate(like.getFilmId(), -1);
+            userStorage.removeLikedFilm(like.getUserId(), like.getFilmId());
+        });
+        return removed;
+    }
+
+    @Override
+    public long getVersion(Long id) throws FilmNotFoundException {
+        Long version = versions.get(id);
+        if (version == null) {
+            log.warn("Фильм с id = " + id + " не найден!");
             throw new FilmNotFoundException("Фильм с id = " + id + " не найден!");
         }
-        return films.get(id);
+        return version;
     }
 
-    public Map<Long, Film> getAll() {
-        return films;
+    @Override
+    public Set<Long> getExistingIds(Collection<Long> ids) {
+        return ids.stream()
+                .filter(films::containsKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<Film> getPage(Long after, int limit) {
+        return ids.tailSet(after, false).stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .map(this::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getPopular(int count) {
+        return getPopular(count, null, null, null);
+    }
+
+    @Override
+    public List<Film> getPopular(int count, Long genreId, Integer year, Long mpaId) {
+        Set<Long> genreFilms = genreId == null ? null : byGenre.getOrDefault(genreId, Set.of());
+
+        Stream<Film> candidates;
+        if (genreFilms != null && genreFilms.size() * RARE_GENRE_RATIO < films.size()) {
+            candidates = genreFilms.stream()
+                    .map(films::get)
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparingInt(Film::getRate).reversed().thenComparing(Film::getId));
+        } else {
+            candidates = byRate.stream()
+                    .filter(key -> genreFilms == null || genreFilms.contains(key.id))
+                    .map(key -> films.get(key.id))
+                    .filter(Objects::nonNull);
+        }
+
+        return candidates
+                .filter(film -> year == null ||
+                        (film.getReleaseDate() != null && film.getReleaseDate().getYear() == year))
+                .filter(film -> mpaId == null || (film.getMpa() != null && mpaId.equals(film.getMpa().getId())))
+                .limit(count)
+                .map(this::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEach(Consumer<Film> action) {
+        ids.forEach(id -> {
+            Film film = films.get(id);
+            if (film != null) {
+                action.accept(copy(film));
+            }
+        });
+    }
+
+    private Film find(Long id) throws FilmNotFoundException {
+        Film film = films.get(id);
+        if (film == null) {
+            log.warn("Фильм с id = " + id + " не найден!");
+            throw new FilmNotFoundException("Фильм с id = " + id + " не найден!");
+        }
+        return film;
+    }
+
+    private void checkLikeParticipants(Long id, Long userId) throws FilmNotFoundException, UserNotFoundException {
+        find(id);
+        if (!userStorage.exists(userId)) {
+            log.warn("Пользователь с id = " + userId + " не найден!");
+            throw new UserNotFoundException("Пользователь с id = " + userId + " не найден!");
+        }
+    }
+
+    private void removeUserLikes(Long userId, Set<Long> filmIds) {
+        filmIds.forEach(filmId -> {
+            if (likes.getOrDefault(filmId, Set.of()).remove(userId)) {
+                changeRate(filmId, -1);
+            }
+        });
+        likesIndex.removeUser(userId);
+    }
+
+    private void changeRate(Long id, int delta) {
+        films.computeIfPresent(id, (filmId, film) -> {
+            Film changed = film.toBuilder()
+                    .rate(film.getRate() + delta)
+                    .build();
+            byRate.remove(new RateKey(film.getRate(), filmId));
+            byRate.add(new RateKey(changed.getRate(), filmId));
+            versions.merge(filmId, 1L, Long::sum);
+            return changed;
+        });
+    }
+
+    private void index(Film film) {
+        byRate.add(new RateKey(film.getRate(), film.getId()));
+        film.getGenres().forEach(genre -> byGenre
+                .computeIfAbsent(genre.getId(), genreId -> new ConcurrentSkipListSet<>())
+                .add(film.getId()));
+    }
+
+    private void unindex(Film film) {
+        byRate.remove(new RateKey(film.getRate(), film.getId()));
+        film.getGenres().forEach(genre -> {
+            Set<Long> genreFilms = byGenre.get(genre.getId());
+            if (genreFilms != null) {
+                genreFilms.remove(film.getId());
+            }
+        });
+    }
+
+    private Set<Long> likes(Long id) {
+        return likes.computeIfAbsent(id, filmId -> ConcurrentHashMap.newKeySet());
+    }
+
+    private Film normalize(Film film) {
+        Set<Long> genreIds = new TreeSet<>();
+        if (film.getGenres() != null) {
+            film.getGenres().forEach(genre -> genreIds.add(genre.getId()));
+        }
+
+        List<Genre> genres = genreIds.stream()
+                .map(genreRepository::findOne)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableList());
+
+        return film.toBuilder()
+                .mpa(film.getMpa() == null ? null : mpaRepository.findOne(film.getMpa().getId()))
+                .genres(genres)
+                .build();
+    }
+
+    private Film copy(Film film) {
+        return film.toBuilder()
+                .mpa(film.getMpa() == null ? null : Mpa.builder()
+                        .id(film.getMpa().getId())
+                        .name(film.getMpa().getName())
+                        .build())
+                .genres(film.getGenres().stream()
+                        .map(genre -> Genre.builder()
+                                .id(genre.getId())
+                                .name(genre.getName())
+                                .build())
+                        .collect(Collectors.toCollection(ArrayList::new)))
+                .build();
     }
 
-    private Long getNextId() {
-        counter++;
-        return counter;
+    @AllArgsConstructor
+    private static class RateKey {
+        private final int rate;
+        private final long id;
     }
 }
@@ -1,35 +1,82 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component("inMemoryUserStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
 public class InMemoryUserStorage implements UserStorage {
-    private final Map<Long, User> users = new HashMap<>();
-    private Long counter = 0L;
+    private final Map<Long, User> users = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Long> ids = new ConcurrentSkipListSet<>();
+    private final Map<Long, Set<Long>> friends = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> likedFilms = new ConcurrentHashMap<>();
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+    private final List<BiConsumer<Long, Set<Long>>> deleteListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong counter = new AtomicLong();
 
     @Override
     public User create(User user) {
-        user.setId(getNextId());
-        users.put(user.getId(), user);
-        return user;
+        user.setId(counter.incrementAndGet());
+        versions.put(user.getId(), 0L);
+        users.put(user.getId(), withoutRelations(user));
+        ids.add(user.getId());
+        return withRelations(user);
+    }
+
+    @Override
+    public List<User> createAll(List<User> users) {
+        return users.stream()
+                .map(this::create)
+                .collect(Collectors.toList());
     }
 
     @Override
     public User update(User user) {
-        users.put(user.getId(), user);
-        return user;
+        if (users.computeIfPresent(user.getId(), (id, stored) -> {
+            versions.merge(id, 1L, Long::sum);
+            return withoutRelations(user);
+        }) == null) {
+            log.warn("Пользователь с id = " + user.getId() + " не найден!");
+            throw new UserNotFoundException("Пользователь с id = " + user.getId() + " не найден!");
+        }
+        return withRelations(user);
     }
 
     @Override
     public void delete(User user) {
         users.remove(user.getId());
+        ids.remove(user.getId());
+        friends.remove(user.getId());
+        friends.forEach((id, userFriends) -> {
+            if (userFriends.remove(user.getId())) {
+                versions.computeIfPresent(id, (userId, version) -> version + 1);
+            }
+        });
+        Set<Long> userLikedFilms = likedFilms.remove(user.getId());
+        versions.remove(user.getId());
+        deleteListeners.forEach(listener -> listener.accept(user.getId(),
+                userLikedFilms == null ? Set.of() : userLikedFilms));
     }
 
     @Override
@@ -39,16 +86,164 @@ public class InMemoryUserStorage implements UserStorage {
             log.warn("Пользователь с id = " + id + " не найден!");
             throw new UserNotFoundException("Пользователь с id = " + id + " не найден!");
         }
-        return user;
+        return withRelations(user);
     }
 
     @Override
     public Map<Long, User> getAll() {
-        return users;
+        Map<Long, User> allUsers = new LinkedHashMap<>();
+        forEach(user -> allUsers.put(user.getId(), user));
+        return allUsers;
+    }
+
+    @Override
+    public List<User> getAll(List<Long> ids) {
+        return ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(this::withRelations)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Set<Long> getExistingIds(Collection<Long> ids) {
+        return ids.stream()
+                .filter(users::containsKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public long getVersion(Long id) throws UserNotFoundException {
+        Long version = versions.get(id);
+        if (version == null) {
+            log.warn("Пользователь с id = " + id + " не найден!");
+            throw new UserNotFoundException("Пользователь с id = " + id + " не найден!");
+        }
+        return version;
+    }
+
+    @Override
+    public void touch(Collection<Long> ids) {
+        ids.forEach(id -> versions.computeIfPresent(id, (userId, version) -> version + 1));
+    }
+
+    @Override
+    public boolean addFriend(Long id, Long friendId) throws UserNotFoundException {
+        checkExists(id);
+        checkExists(friendId);
+        return friends(id).add(friendId);
+    }
+
+    @Override
+    public List<Friendship> addFriends(List<Friendship> friendships) {
+        return friendships.stream()
+                .filter(friendship -> friends(friendship.getId()).add(friendship.getFriendId()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean removeFriend(Long id, Long friendId) {
+        Set<Long> userFriends = friends.get(id);
+        return userFriends != null && userFriends.remove(friendId);
+    }
+
+    @Override
+    public List<User> getFriends(Long id) {
+        return friends.getOrDefault(id, Set.of()).stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(this::withRelations)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<User> getCommonFriends(Long id, Long otherId) {
+        Set<Long> otherFriends = friends.getOrDefault(otherId, Set.of());
+        return friends.getOrDefault(id, Set.of()).stream()
+                .filter(otherFriends::contains)
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(this::withRelations)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Long> getRecommendedFriendIds(Long id, int count) {
+        Set<Long> userFriends = friends.getOrDefault(id, Set.of());
+        Map<Long, Long> mutualFriends = userFriends.stream()
+                .flatMap(friendId -> friends.getOrDefault(friendId, Set.of()).stream())
+                .filter(candidateId -> !candidateId.equals(id) && !userFriends.contains(candidateId))
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+
+        return mutualFriends.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(Math.max(0, count))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<User> getPage(Long after, int limit) {
+        return ids.tailSet(after, false).stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .map(this::withRelations)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void forEach(Consumer<User> action) {
+        ids.forEach(id -> {
+            User user = users.get(id);
+            if (user != null) {
+                action.accept(withRelations(user));
+            }
+        });
+    }
+
+    void onDelete(BiConsumer<Long, Set<Long>> listener) {
+        deleteListeners.add(listener);
+    }
+
+    boolean exists(Long id) {
+        return users.containsKey(id);
+    }
+
+    void addLikedFilm(Long id, Long filmId) {
+        likedFilms.computeIfAbsent(id, userId -> ConcurrentHashMap.newKeySet()).add(filmId);
+    }
+
+    void removeLikedFilm(Long id, Long filmId) {
+        Set<Long> films = likedFilms.get(id);
+        if (films != null) {
+            films.remove(filmId);
+        }
+    }
+
+    private void checkExists(Long id) throws UserNotFoundException {
+        if (!users.containsKey(id)) {
+            log.warn("Пользователь с id = " + id + " не найден!");
+            throw new UserNotFoundException("Пользователь с id = " + id + " не найден!");
+        }
+    }
+
+    private Set<Long> friends(Long id) {
+        return friends.computeIfAbsent(id, userId -> new ConcurrentSkipListSet<>());
+    }
+
+    private User withoutRelations(User user) {
+        return user.toBuilder()
+                .friends(null)
+                .likedFilms(null)
+                .build();
     }
 
-    private Long getNextId() {
-        counter++;
-        return counter;
+    private User withRelations(User user) {
+        return user.toBuilder()
+                .friends(new LinkedHashSet<>(friends.getOrDefault(user.getId(), Set.of())))
+                .likedFilms(new LinkedHashSet<>(likedFilms.getOrDefault(user.getId(), Set.of())))
+                .build();
     }
 }
@@ -0,0 +1,281 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.repository.LikesRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class LikesIndex {
+    private static final int NEIGHBOURS = 10;
+    private static final Comparator<long[]> STRONGEST_FIRST = Comparator.comparingLong((long[] entry) -> -entry[1])
+            .thenComparingLong(entry -> entry[0]);
+
+    private final LikesRepository likesRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, IdSet> filmsByUser = new HashMap<>();
+    private Map<Long, IdSet> usersByFilm = new HashMap<>();
+
+    @Autowired
+    public LikesIndex(LikesRepository likesRepository) {
+        this.likesRepository = likesRepository;
+    }
+
+    @PostConstruct
+    public void reload() {
+        Map<Long, IdSet> films = new HashMap<>();
+        Map<Long, IdSet> users = new HashMap<>();
+        likesRepository.streamAllLikes((userId, filmId) -> {
+            films.computeIfAbsent(userId, id -> new IdSet()).add(filmId);
+            users.computeIfAbsent(filmId, id -> new IdSet()).add(userId);
+        });
+
+        lock.writeLock().lock();
+        try {
+            filmsByUser = films;
+            usersByFilm = users;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Индекс лайков загружен: пользователей " + films.size() + ", фильмов " + users.size());
+    }
+
+    public void add(Long userId, Long filmId) {
+        addAll(List.of(Like.builder()
+                .userId(userId)
+                .filmId(filmId)
+                .build()));
+    }
+
+    public void addAll(Collection<Like> likes) {
+        lock.writeLock().lock();
+        try {
+            for (Like like : likes) {
+                filmsByUser.computeIfAbsent(like.getUserId(), id -> new IdSet()).add(like.getFilmId());
+                usersByFilm.computeIfAbsent(like.getFilmId(), id -> new IdSet()).add(like.getUserId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long userId, Long filmId) {
+        removeAll(List.of(Like.builder()
+                .userId(userId)
+                .filmId(filmId)
+                .build()));
+    }
+
+    public void removeAll(Collection<Like> likes) {
+        lock.writeLock().lock();
+        try {
+            for (Like like : likes) {
+                remove(filmsByUser, like.getUserId(), like.getFilmId());
+                remove(usersByFilm, like.getFilmId(), like.getUserId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Long> recommend(Long userId, int count) {
+        return recommend(userId, Map.of(), count);
+    }
+
+    public List<Long> recommend(Long userId, Map<Long, Boolean> pending, int count) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+
+        Set<Long> liked;
+        long[] likers;
+        lock.readLock().lock();
+        try {
+            liked = liked(userId, pending);
+            likers = likersOf(liked);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (liked.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<long[]> neighbours = overlaps(likers, userId).stream()
+                .sorted(STRONGEST_FIRST)
+                .limit(NEIGHBOURS)
+                .collect(Collectors.toList());
+
+        Map<Long, Long> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (long[] neighbour : neighbours) {
+                IdSet films = filmsByUser.get(neighbour[0]);
+                for (int i = 0; films != null && i < films.size; i++) {
+                    if (!liked.contains(films.ids[i])) {
+                        scores.merge(films.ids[i], neighbour[1], Long::sum);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return scores.entrySet().stream()
+                .map(score -> new long[]{score.getKey(), score.getValue()})
+                .sorted(STRONGEST_FIRST)
+                .limit(count)
+                .map(score -> score[0])
+                .collect(Collectors.toList());
+    }
+
+    public void removeUser(Long userId) {
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                IdSet films = filmsByUser.remove(userId);
+                for (int i = 0; films != null && i < films.size; i++) {
+                    remove(usersByFilm, films.ids[i], userId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void removeFilm(Long filmId) {
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                IdSet users = usersByFilm.remove(filmId);
+                for (int i = 0; users != null && i < users.size; i++) {
+                    remove(filmsByUser, users.ids[i], filmId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    private long[] likersOf(Set<Long> films) {
+        int size = 0;
+        for (Long filmId : films) {
+            IdSet likers = usersByFilm.get(filmId);
+            size += likers == null ? 0 : likers.size;
+        }
+
+        long[] likers = new long[size];
+        int position = 0;
+        for (Long filmId : films) {
+            IdSet filmLikers = usersByFilm.get(filmId);
+            if (filmLikers != null) {
+                System.arraycopy(filmLikers.ids, 0, likers, position, filmLikers.size);
+                position += filmLikers.size;
+            }
+        }
+        return likers;
+    }
+
+    // Overlaps are counted outside the lock on a copy of the likers: once sorted, every run of equal ids is one
+    // neighbour and its length is the number of shared films. parallelSort splits large arrays across the common
+    // fork-join pool and sorts small ones sequentially, so popular films are counted in parallel.
+    private static List<long[]> overlaps(long[] likers, long userId) {
+        Arrays.parallelSort(likers);
+
+        List<long[]> overlaps = new ArrayList<>();
+        for (int start = 0, end; start < likers.length; start = end) {
+            end = start + 1;
+            while (end < likers.length && likers[end] == likers[start]) {
+                end++;
+            }
+            if (likers[start] != userId) {
+                overlaps.add(new long[]{likers[start], end - start});
+            }
+        }
+        return overlaps;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private Set<Long> liked(Long userId, Map<Long, Boolean> pending) {
+        Set<Long> liked = new HashSet<>();
+        IdSet stored = filmsByUser.get(userId);
+        for (int i = 0; stored != null && i < stored.size; i++) {
+            liked.add(stored.ids[i]);
+        }
+        pending.forEach((filmId, like) -> {
+            if (like) {
+                liked.add(filmId);
+            } else {
+                liked.remove(filmId);
+            }
+        });
+        return liked;
+    }
+
+    private static void remove(Map<Long, IdSet> index, Long key, long id) {
+        IdSet ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.size == 0) {
+            index.remove(key);
+        }
+    }
+
+    private static class IdSet {
+        private long[] ids = new long[4];
+        private int size;
+
+        private void add(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        private boolean remove(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+    }
+}
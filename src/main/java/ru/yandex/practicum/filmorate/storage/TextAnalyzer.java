@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+class TextAnalyzer {
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MIN_STEM_LENGTH = 3;
+    private static final List<String> RUSSIAN_ENDINGS = List.of(
+            "иями", "ями", "ами", "иях", "ого", "его", "ому", "ему", "ыми", "ими", "ешь", "ишь", "ете", "ите",
+            "ая", "яя", "ое", "ее", "ые", "ие", "ый", "ий", "ой", "ей", "ую", "юю", "ых", "их", "ым", "им", "ом",
+            "ем", "ам", "ям", "ах", "ях", "ов", "ев", "ию", "ью", "ия", "ья", "ье", "ют", "ут", "ят", "ат", "ет",
+            "ит", "ла", "ло", "ли", "ть", "ти",
+            "а", "я", "о", "е", "и", "ы", "у", "ю", "ь", "й");
+
+    Set<String> analyze(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null) {
+            return terms;
+        }
+
+        for (String token : tokenize(text)) {
+            terms.add(stem(token));
+        }
+        return terms;
+    }
+
+    private List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= MIN_TOKEN_LENGTH) {
+                    tokens.add(normalized.substring(start, i));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private String stem(String token) {
+        return isCyrillic(token) ? stemRussian(token) : stemEnglish(token);
+    }
+
+    private String stemRussian(String token) {
+        for (String ending : RUSSIAN_ENDINGS) {
+            if (token.endsWith(ending) && token.length() - ending.length() >= MIN_STEM_LENGTH) {
+                return token.substring(0, token.length() - ending.length());
+            }
+        }
+        return token;
+    }
+
+    private String stemEnglish(String token) {
+        if (token.endsWith("ies") && token.length() > 4) {
+            return token.substring(0, token.length() - 3) + "y";
+        }
+        if (token.endsWith("ing") && token.length() - 3 >= MIN_STEM_LENGTH) {
+            return token.substring(0, token.length() - 3);
+        }
+        if (token.endsWith("ed") && token.length() - 2 >= MIN_STEM_LENGTH) {
+            return token.substring(0, token.length() - 2);
+        }
+        if (token.endsWith("ly") && token.length() - 2 >= MIN_STEM_LENGTH) {
+            return token.substring(0, token.length() - 2);
+        }
+        if (token.endsWith("es") && token.length() - 2 >= MIN_STEM_LENGTH && (token.endsWith("ses") ||
+                token.endsWith("xes") || token.endsWith("zes") || token.endsWith("ches") || token.endsWith("shes"))) {
+            return token.substring(0, token.length() - 2);
+        }
+        if (token.endsWith("s") && !token.endsWith("ss") && token.length() - 1 >= MIN_STEM_LENGTH) {
+            return token.substring(0, token.length() - 1);
+        }
+        return token;
+    }
+
+    private boolean isCyrillic(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (Character.UnicodeBlock.of(token.charAt(i)) == Character.UnicodeBlock.CYRILLIC) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
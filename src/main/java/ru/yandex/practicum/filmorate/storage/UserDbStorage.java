@@ -1,21 +1,39 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.repository.FriendshipRepository;
 import ru.yandex.practicum.filmorate.repository.UsersRepository;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
+@Slf4j
 @Component("userDbStorage")
+@ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
 public class UserDbStorage implements UserStorage {
     private final UsersRepository usersRepository;
+    private final FriendshipRepository friendshipRepository;
+    private final FriendGraph friendGraph;
+    private final LikesIndex likesIndex;
 
     @Autowired
-    public UserDbStorage(UsersRepository usersRepository) {
+    public UserDbStorage(UsersRepository usersRepository, FriendshipRepository friendshipRepository,
+                         FriendGraph friendGraph, LikesIndex likesIndex) {
         this.usersRepository = usersRepository;
+        this.friendshipRepository = friendshipRepository;
+        this.friendGraph = friendGraph;
+        this.likesIndex = likesIndex;
     }
 
     @Override
@@ -23,27 +41,37 @@ public class UserDbStorage implements UserStorage {
         return usersRepository.save(user);
     }
 
+    @Override
+    public List<User> createAll(List<User> users) {
+        return usersRepository.saveAll(users);
+    }
+
     @Override
     public User update(User user) {
-        if (usersRepository.exists(user.getId())) {
-            return usersRepository.update(user);
-        } else {
+        User updated = usersRepository.update(user);
+        if (updated == null) {
             throw new UserNotFoundException("Пользователь с id = " + user.getId() + " не найден!");
         }
+        return updated;
     }
 
     @Override
+    @Transactional
     public void delete(User user) {
-        usersRepository.delete(user.getId());
+        Set<Long> followersIds = friendshipRepository.findFollowersIds(user.getId());
+        if (usersRepository.delete(user.getId())) {
+            friendGraph.removeUser(user.getId(), followersIds);
+            likesIndex.removeUser(user.getId());
+        }
     }
 
     @Override
     public User get(Long id) throws UserNotFoundException {
-        if (usersRepository.exists(id)) {
-            return usersRepository.findOne(id);
-        } else {
+        User user = usersRepository.findOne(id);
+        if (user == null) {
             throw new UserNotFoundException("Пользователь с id = " + id + " не найден!");
         }
+        return user;
     }
 
     @Override
@@ -53,4 +81,93 @@ public class UserDbStorage implements UserStorage {
                 .forEach(user -> allUsers.put(user.getId(), user));
         return allUsers;
     }
+
+    @Override
+    public List<User> getAll(List<Long> ids) {
+        return usersRepository.findAll(ids);
+    }
+
+    @Override
+    public Set<Long> getExistingIds(Collection<Long> ids) {
+        return usersRepository.findExistingIds(ids);
+    }
+
+    @Override
+    public long getVersion(Long id) throws UserNotFoundException {
+        Long version = usersRepository.findVersion(id);
+        if (version == null) {
+            throw new UserNotFoundException("Пользователь с id = " + id + " не найден!");
+        }
+        return version;
+    }
+
+    @Override
+    public void touch(Collection<Long> ids) {
+        usersRepository.touch(ids);
+    }
+
+    @Override
+    @Transactional
+    public boolean addFriend(Long id, Long friendId) throws UserNotFoundException {
+        Set<Long> existing = usersRepository.findExistingIds(List.of(id, friendId));
+        for (Long userId : List.of(id, friendId)) {
+            if (!existing.contains(userId)) {
+                log.warn("Пользователь с id = " + userId + " не найден!");
+                throw new UserNotFoundException("Пользователь с id = " + userId + " не найден!");
+            }
+        }
+
+        return !addFriends(List.of(Friendship.builder()
+                .id(id)
+                .friendId(friendId)
+                .status(Friendship.UNCONFIRMED_STATUS)
+                .build())).isEmpty();
+    }
+
+    @Override
+    @Transactional
+    public List<Friendship> addFriends(List<Friendship> friendships) {
+        List<Friendship> added = friendshipRepository.saveAllIfAbsent(friendships);
+        usersRepository.touch(friendshipRepository.updateStatusIfMutual(added, Friendship.CONFIRMED_STATUS));
+        added.forEach(friendship -> friendGraph.add(friendship.getId(), friendship.getFriendId()));
+        return added;
+    }
+
+    @Override
+    @Transactional
+    public boolean removeFriend(Long id, Long friendId) {
+        if (!friendshipRepository.delete(id, friendId)) {
+            return false;
+        }
+        if (friendshipRepository.updateStatus(friendId, id, Friendship.UNCONFIRMED_STATUS)) {
+            usersRepository.touch(List.of(friendId));
+        }
+        friendGraph.remove(id, friendId);
+        return true;
+    }
+
+    @Override
+    public List<User> getFriends(Long id) {
+        return usersRepository.findFriends(id);
+    }
+
+    @Override
+    public List<User> getCommonFriends(Long id, Long otherId) {
+        return usersRepository.findCommonFriends(id, otherId);
+    }
+
+    @Override
+    public List<Long> getRecommendedFriendIds(Long id, int count) {
+        return friendGraph.recommend(id, count);
+    }
+
+    @Override
+    public List<User> getPage(Long after, int limit) {
+        return usersRepository.findPage(after, limit);
+    }
+
+    @Override
+    public void forEach(Consumer<User> action) {
+        usersRepository.streamAll(action);
+    }
 }
@@ -1,13 +1,20 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     User create(User user);
 
+    List<User> createAll(List<User> users);
+
     User update(User user);
 
     void delete(User user);
@@ -15,4 +22,28 @@ public interface UserStorage {
     User get(Long id) throws UserNotFoundException;
 
     Map<Long, User> getAll();
+
+    List<User> getAll(List<Long> ids);
+
+    Set<Long> getExistingIds(Collection<Long> ids);
+
+    long getVersion(Long id) throws UserNotFoundException;
+
+    void touch(Collection<Long> ids);
+
+    boolean addFriend(Long id, Long friendId) throws UserNotFoundException;
+
+    List<Friendship> addFriends(List<Friendship> friendships);
+
+    boolean removeFriend(Long id, Long friendId);
+
+    List<User> getFriends(Long id);
+
+    List<User> getCommonFriends(Long id, Long otherId);
+
+    List<Long> getRecommendedFriendIds(Long id, int count);
+
+    List<User> getPage(Long after, int limit);
+
+    void forEach(Consumer<User> action);
 }
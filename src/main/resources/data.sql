@@ -37,18 +37,24 @@
 -- Наполнение таблицы genre
 
 INSERT INTO GENRES (NAME)
-VALUES ('Комедия'),
-       ('Драма'),
-       ('Мультфильм'),
-       ('Триллер'),
-       ('Документальный'),
-       ('Боевик');
+SELECT NAME
+FROM (VALUES (1, 'Комедия'),
+             (2, 'Драма'),
+             (3, 'Мультфильм'),
+             (4, 'Триллер'),
+             (5, 'Документальный'),
+             (6, 'Боевик')) AS V(ORDINAL, NAME)
+WHERE NOT EXISTS(SELECT 1 FROM GENRES)
+ORDER BY ORDINAL;
 
 -- Наполнение таблицы mpa
 
 INSERT INTO MPA (NAME)
-VALUES ('G'),
-       ('PG'),
-       ('PG-13'),
-       ('R'),
-       ('NC-17');
\ No newline at end of file
+SELECT NAME
+FROM (VALUES (1, 'G'),
+             (2, 'PG'),
+             (3, 'PG-13'),
+             (4, 'R'),
+             (5, 'NC-17')) AS V(ORDINAL, NAME)
+WHERE NOT EXISTS(SELECT 1 FROM MPA)
+ORDER BY ORDINAL;
@@ -7,9 +7,12 @@ CREATE TABLE IF NOT EXISTS users
     email    VARCHAR(100) NOT NULL,
     login    VARCHAR(50)  NOT NULL,
     name     VARCHAR(50),
-    birthday DATE         NOT NULL
+    birthday DATE         NOT NULL,
+    version  BIGINT       DEFAULT 0 NOT NULL
 );
 
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+
 CREATE TABLE IF NOT EXISTS friendship
 (
     id        INTEGER REFERENCES users (id) ON DELETE CASCADE,
@@ -32,9 +35,14 @@ CREATE TABLE IF NOT EXISTS films
     release_date DATE,
     duration     INTEGER,
     rate         INTEGER,
-    mpa_rating   INTEGER      REFERENCES mpa (id) ON DELETE SET NULL
+    mpa_rating   INTEGER      REFERENCES mpa (id) ON DELETE SET NULL,
+    genre_mask   BIGINT,
+    version      BIGINT       DEFAULT 0 NOT NULL
 );
 
+ALTER TABLE films ADD COLUMN IF NOT EXISTS genre_mask BIGINT;
+ALTER TABLE films ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL;
+
 CREATE TABLE IF NOT EXISTS genres
 (
     id   INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -55,4 +63,20 @@ CREATE TABLE IF NOT EXISTS likes
     CONSTRAINT uc_likes UNIQUE (user_id, film_id)
 );
 
+DROP INDEX IF EXISTS idx_films_rate;
+CREATE INDEX IF NOT EXISTS idx_films_rate_id ON films (rate DESC, id);
+CREATE INDEX IF NOT EXISTS idx_films_release_date ON films (release_date);
+CREATE INDEX IF NOT EXISTS idx_films_mpa_rating ON films (mpa_rating);
+CREATE INDEX IF NOT EXISTS idx_films_genres_genre ON films_genres (genre_id, film_id);
+
+CREATE TABLE IF NOT EXISTS events
+(
+    seq        BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id    INTEGER     NOT NULL,
+    entity_id  INTEGER     NOT NULL,
+    event_type VARCHAR(10) NOT NULL,
+    operation  VARCHAR(10) NOT NULL,
+    created_at BIGINT      NOT NULL
+);
 
+CREATE INDEX IF NOT EXISTS idx_events_user_seq ON events (user_id, seq);
@@ -1,30 +1,155 @@
 package ru.yandex.practicum.filmorate;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.validation.BeanPropertyBindingResult;
+import ru.yandex.practicum.filmorate.config.Bulkhead;
+import ru.yandex.practicum.filmorate.config.CountingJdbcTemplate;
+import ru.yandex.practicum.filmorate.config.ExecutionConfiguration;
+import ru.yandex.practicum.filmorate.config.JdbcTemplateDecorator;
+import ru.yandex.practicum.filmorate.config.QueryCounter;
 import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportError;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.repository.FilmsRepository;
+import ru.yandex.practicum.filmorate.repository.GenreMask;
+import ru.yandex.practicum.filmorate.repository.GenreRepository;
+import ru.yandex.practicum.filmorate.repository.LikesRepository;
+import ru.yandex.practicum.filmorate.repository.MpaRepository;
+import ru.yandex.practicum.filmorate.repository.UsersRepository;
+import ru.yandex.practicum.filmorate.service.BulkService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.LikeBuffer;
 import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmDiscoveryIndex;
+import ru.yandex.practicum.filmorate.storage.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.UserDbStorage;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
-@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@AutoConfigureMockMvc
 @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
 class FilmTests {
-    private final FilmDbStorage filmStorage;
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private GenreRepository genreRepository;
+
+    @Autowired
+    private MpaRepository mpaRepository;
+
+    @Autowired
+    private LikesIndex likesIndex;
+
+    @Autowired
+    private FilmSearchIndex searchIndex;
+
+    @Autowired
+    private FilmDiscoveryIndex discoveryIndex;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private QueryCounter queryCounter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private FilmsRepository filmsRepository;
+
+    @Autowired
+    private LikesRepository likesRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BulkService bulkService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     @Test
     public void testGetFilmPositiveCase() throws FilmNotFoundException {
@@ -86,6 +211,32 @@ class FilmTests {
                 );
     }
 
+    @Test
+    public void testUpdateFilmGenres() throws FilmNotFoundException {
+        Film testFilm = buildFilm();
+        testFilm.setGenres(List.of(Genre.builder().id(1L).build(), Genre.builder().id(2L).build()));
+        filmStorage.create(testFilm);
+
+        testFilm.setGenres(List.of(Genre.builder().id(3L).build(), Genre.builder().id(2L).build(),
+                Genre.builder().id(3L).build()));
+        Film updatedFilm = filmStorage.update(testFilm);
+        String genreName = genreRepository.findOne(2L).getName();
+        String mpaName = mpaRepository.findOne(1L).getName();
+        filmStorage.get(testFilm.getId()).getGenres().get(0).setName("Изменённый жанр");
+        genreRepository.findAll().get(1).setName("Изменённый жанр");
+        mpaRepository.findOne(1L).setName("Изменённый рейтинг");
+
+        assertAll(
+                () -> assertThat(updatedFilm.getGenres()).isEqualTo(filmStorage.get(testFilm.getId()).getGenres()),
+                () -> assertThat(genreRepository.findOne(2L).getName()).isEqualTo(genreName),
+                () -> assertThat(mpaRepository.findOne(1L).getName()).isEqualTo(mpaName),
+                () -> assertThat(filmStorage.get(testFilm.getId()).getGenres().get(0).getName()).isEqualTo(genreName),
+                () -> assertThat(updatedFilm.getGenres().stream()
+                        .map(Genre::getId)
+                        .collect(Collectors.toList())).isEqualTo(List.of(2L, 3L))
+        );
+    }
+
     @Test
     public void testUpdateNonexistentFilm() {
         Long id = 1L;
@@ -132,6 +283,798 @@ class FilmTests {
         );
     }
 
+    @Test
+    public void testGetAllFilmsWithGenres() {
+        Film testFilm1 = buildFilm();
+        Film testFilm2 = buildFilm();
+
+        testFilm1.setGenres(List.of(Genre.builder().id(2L).build(), Genre.builder().id(1L).build()));
+
+        filmStorage.create(testFilm1);
+        filmStorage.create(testFilm2);
+
+        Map<Long, Film> films = filmStorage.getAll();
+
+        assertAll(
+                () -> assertThat(films.get(testFilm1.getId()).getGenres().stream()
+                        .map(Genre::getId)
+                        .collect(Collectors.toList())).isEqualTo(List.of(1L, 2L)),
+                () -> assertThat(films.get(testFilm2.getId()).getGenres()).isEqualTo(List.of()),
+                () -> assertThat(films.get(testFilm1.getId()).getMpa()).isEqualTo(testFilm1.getMpa())
+        );
+    }
+
+    @Test
+    public void testGetFilmsPage() {
+        Film testFilm1 = buildFilm();
+        Film testFilm2 = buildFilm();
+        Film testFilm3 = buildFilm();
+
+        filmStorage.create(testFilm1);
+        filmStorage.create(testFilm2);
+        filmStorage.create(testFilm3);
+
+        List<Film> firstPage = filmStorage.getPage(0L, 2);
+        List<Film> secondPage = filmStorage.getPage(firstPage.get(firstPage.size() - 1).getId(), 2);
+
+        assertAll(
+                () -> assertThat(firstPage).isEqualTo(List.of(testFilm1, testFilm2)),
+                () -> assertThat(secondPage).isEqualTo(List.of(testFilm3))
+        );
+    }
+
+    @Test
+    public void testGetPopularFilms() {
+        Film testFilm1 = buildFilm();
+        Film testFilm2 = buildFilm();
+        Film testFilm3 = buildFilm();
+
+        testFilm2.setRate(5);
+        testFilm3.setRate(3);
+
+        filmStorage.create(testFilm1);
+        filmStorage.create(testFilm2);
+        filmStorage.create(testFilm3);
+
+        assertThat(filmStorage.getPopular(2))
+                .isEqualTo(List.of(testFilm2, testFilm3));
+    }
+
+    @Test
+    public void testGetPopularFilmsUsesRateIndex() {
+        filmStorage.createAll(IntStream.range(0, 200)
+                .mapToObj(i -> buildFilm())
+                .collect(Collectors.toList()));
+
+        String plan = jdbcTemplate.queryForObject("explain analyze select f.id, f.name, f.description, " +
+                "f.release_date, f.duration, f.rate, f.mpa_rating, f.genre_mask from films f " +
+                "order by f.rate desc, f.id limit 10", String.class);
+        Matcher scanCount = Pattern.compile("scanCount: (\\d+)").matcher(plan);
+
+        assertAll(
+                () -> assertThat(plan).contains("IDX_FILMS_RATE_ID"),
+                () -> assertThat(plan).contains("index sorted"),
+                () -> assertThat(scanCount.find()).isTrue(),
+                () -> assertThat(Integer.parseInt(scanCount.group(1))).isLessThanOrEqualTo(11)
+        );
+    }
+
+    @Test
+    public void testGetPopularFilmsFiltered() {
+        InMemoryFilmStorage memoryFilmStorage = new InMemoryFilmStorage(new InMemoryUserStorage(), genreRepository,
+                mpaRepository, new LikesIndex(likesRepository));
+        Film testFilm1 = buildFilm();
+        Film testFilm2 = buildFilm();
+        Film testFilm3 = buildFilm();
+
+        testFilm1.setGenres(List.of(Genre.builder().id(1L).build()));
+        testFilm2.setGenres(List.of(Genre.builder().id(2L).build()));
+        testFilm2.setReleaseDate(LocalDate.of(2000, 5, 1));
+        testFilm2.setMpa(Mpa.builder().id(2L).build());
+        testFilm2.setRate(5);
+        testFilm3.setGenres(List.of(Genre.builder().id(1L).build(), Genre.builder().id(2L).build()));
+        testFilm3.setReleaseDate(LocalDate.of(2000, 12, 31));
+        testFilm3.setRate(3);
+
+        List.of(testFilm1, testFilm2, testFilm3).forEach(film -> {
+            memoryFilmStorage.create(film.toBuilder().build());
+            filmStorage.create(film);
+        });
+        List<Long> commonGenre = ids(memoryFilmStorage.getPopular(10, 1L, null, null));
+        IntStream.range(0, 40).forEach(i -> memoryFilmStorage.create(buildFilm()));
+        Film handedOut = memoryFilmStorage.get(3L);
+        handedOut.getMpa().setName("Изменённый рейтинг");
+        handedOut.getGenres().get(0).setName("Изменённый жанр");
+        Film stored = memoryFilmStorage.get(3L);
+
+        assertAll(
+                () -> assertThat(ids(filmStorage.getPopular(10, 1L, null, null)))
+                        .isEqualTo(List.of(testFilm3.getId(), testFilm1.getId())),
+                () -> assertThat(ids(filmStorage.getPopular(10, null, 2000, null)))
+                        .isEqualTo(List.of(testFilm2.getId(), testFilm3.getId())),
+                () -> assertThat(ids(filmStorage.getPopular(10, 2L, 2000, 1L)))
+                        .isEqualTo(List.of(testFilm3.getId())),
+                () -> assertThat(ids(filmStorage.getPopular(1, 2L, null, null)))
+                        .isEqualTo(List.of(testFilm2.getId())),
+                () -> assertThat(commonGenre).isEqualTo(List.of(3L, 1L)),
+                () -> assertThat(ids(memoryFilmStorage.getPopular(10, 1L, null, null)))
+                        .isEqualTo(List.of(3L, 1L)),
+                () -> assertThat(ids(memoryFilmStorage.getPopular(10, 2L, 2000, 1L)))
+                        .isEqualTo(List.of(3L)),
+                () -> assertThat(stored.getMpa().getName()).isEqualTo(mpaRepository.findOne(1L).getName()),
+                () -> assertThat(stored.getGenres().get(0).getName()).isEqualTo(genreRepository.findOne(1L).getName()),
+                () -> assertThrows(ValidationException.class,
+                        () -> filmService.findMostPopular(-1, null, null, null)),
+                () -> assertThrows(ValidationException.class,
+                        () -> filmService.findMostPopular(10, null, 1000000000, null))
+        );
+    }
+
+    @Test
+    public void testLikeAndUnlikeFilm() {
+        Film testFilm = buildFilm();
+        filmStorage.create(testFilm);
+        User testUser = userStorage.create(User.builder()
+                .login("dolore")
+                .email("mail@mail.ru")
+                .birthday(LocalDate.of(1946, 8, 20))
+                .build());
+
+        filmStorage.addLike(testFilm.getId(), testUser.getId());
+        filmStorage.addLike(testFilm.getId(), testUser.getId());
+        int rateAfterLike = filmStorage.get(testFilm.getId()).getRate();
+
+        filmStorage.removeLike(testFilm.getId(), testUser.getId());
+        int rateAfterUnlike = filmStorage.get(testFilm.getId()).getRate();
+
+        assertAll(
+                () -> assertThat(rateAfterLike).isEqualTo(1),
+                () -> assertThat(rateAfterUnlike).isEqualTo(0)
+        );
+    }
+
+    @Test
+    public void testLikeFilmByNonexistentUser() {
+        Film testFilm = buildFilm();
+        filmStorage.create(testFilm);
+
+        Exception exception = assertThrows(UserNotFoundException.class,
+                () -> filmStorage.addLike(testFilm.getId(), 1L));
+        assertThat(exception.getMessage())
+                .isEqualTo("Пользователь с id = 1 не найден!");
+    }
+
+    @Test
+    public void testCreateAllFilms() {
+        Film testFilm1 = buildFilm();
+        Film testFilm2 = buildFilm();
+        testFilm2.setGenres(List.of(Genre.builder().id(1L).build()));
+
+        filmStorage.createAll(List.of(testFilm1, testFilm2));
+
+        assertAll(
+                () -> assertThat(filmStorage.get(testFilm1.getId())).isEqualTo(testFilm1),
+                () -> assertThat(filmStorage.get(testFilm2.getId())).isEqualTo(testFilm2),
+                () -> assertThat(testFilm2.getId()).isEqualTo(testFilm1.getId() + 1)
+        );
+    }
+
+    @Test
+    public void testConcurrentLikesInMemory() {
+        InMemoryUserStorage memoryUserStorage = new InMemoryUserStorage();
+        InMemoryFilmStorage memoryFilmStorage = new InMemoryFilmStorage(memoryUserStorage, genreRepository,
+                mpaRepository, new LikesIndex(likesRepository));
+        Film testFilm1 = memoryFilmStorage.create(buildFilm());
+        Film testFilm2 = memoryFilmStorage.create(buildFilm());
+        List<User> users = IntStream.range(0, 200)
+                .mapToObj(i -> memoryUserStorage.create(User.builder()
+                        .login("user" + i)
+                        .email("user" + i + "@mail.ru")
+                        .birthday(LocalDate.of(1990, 1, 1))
+                        .build()))
+                .collect(Collectors.toList());
+
+        users.parallelStream().forEach(user -> {
+            memoryFilmStorage.addLike(testFilm2.getId(), user.getId());
+            memoryFilmStorage.addLike(testFilm2.getId(), user.getId());
+        });
+        memoryUserStorage.delete(users.get(1));
+
+        assertAll(
+                () -> assertThat(memoryFilmStorage.get(testFilm2.getId()).getRate()).isEqualTo(199),
+                () -> assertThat(memoryFilmStorage.hasLike(testFilm2.getId(), users.get(1).getId())).isFalse(),
+                () -> assertThat(memoryFilmStorage.getPopular(2).stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()))
+                        .isEqualTo(List.of(testFilm2.getId(), testFilm1.getId())),
+                () -> assertThat(memoryUserStorage.get(users.get(0).getId()).getLikedFilms())
+                        .isEqualTo(Set.of(testFilm2.getId()))
+        );
+    }
+
+    @Test
+    public void testBufferedLikes() {
+        LikeBuffer likeBuffer = new LikeBuffer(filmStorage, userStorage, likesIndex, searchIndex,
+                discoveryIndex, true, 100);
+        Film testFilm = buildFilm();
+        filmStorage.create(testFilm);
+        discoveryIndex.add(testFilm);
+        List<User> users = IntStream.range(0, 3)
+                .mapToObj(i -> userStorage.create(User.builder()
+                        .login("user" + i)
+                        .email("user" + i + "@mail.ru")
+                        .birthday(LocalDate.of(1990, 1, 1))
+                        .build()))
+                .collect(Collectors.toList());
+
+        users.forEach(user -> likeBuffer.add(testFilm.getId(), user.getId(), true));
+        likeBuffer.add(testFilm.getId(), users.get(0).getId(), true);
+        likeBuffer.add(testFilm.getId(), users.get(1).getId(), false);
+        int storedRateBeforeFlush = filmStorage.get(testFilm.getId()).getRate();
+        int pendingRate = likeBuffer.applyPending(filmStorage.get(testFilm.getId())).getRate();
+        List<Long> discoveredBeforeFlush = discoveryIndex.discover(0, false, FilmDiscoveryIndex.ANY_MPA, 2, 0, 10);
+
+        likeBuffer.flush();
+
+        assertAll(
+                () -> assertThat(storedRateBeforeFlush).isEqualTo(0),
+                () -> assertThat(pendingRate).isEqualTo(2),
+                () -> assertThat(filmStorage.get(testFilm.getId()).getRate()).isEqualTo(2),
+                () -> assertThat(likeBuffer.applyPending(filmStorage.get(testFilm.getId())).getRate()).isEqualTo(2),
+                () -> assertThat(discoveredBeforeFlush).isEqualTo(List.of(testFilm.getId())),
+                () -> assertThat(discoveryIndex.discover(0, false, FilmDiscoveryIndex.ANY_MPA, 2, 0, 10))
+                        .isEqualTo(List.of(testFilm.getId())),
+                () -> assertThat(discoveryIndex.discover(0, false, FilmDiscoveryIndex.ANY_MPA, 3, 0, 10))
+                        .isEqualTo(List.of()),
+                () -> assertThrows(UserNotFoundException.class, () -> likeBuffer.add(testFilm.getId(), 100L, true))
+        );
+    }
+
+    @Test
+    public void testBufferedLikesPartialFlush() {
+        AtomicBoolean failed = new AtomicBoolean();
+        FilmDbStorage failingStorage = new FilmDbStorage(filmsRepository, likesRepository, usersRepository,
+                likesIndex) {
+            @Override
+            public List<Like> removeLikes(List<Like> likes) {
+                if (failed.compareAndSet(false, true)) {
+                    throw new DataAccessResourceFailureException("База данных недоступна");
+                }
+                return super.removeLikes(likes);
+            }
+        };
+        LikeBuffer likeBuffer = new LikeBuffer(failingStorage, userStorage, likesIndex, searchIndex,
+                discoveryIndex, true, Integer.MAX_VALUE);
+        List<Film> films = filmStorage.createAll(List.of(buildFilm(), buildFilm(), buildFilm()));
+        List<User> users = IntStream.range(0, 3)
+                .mapToObj(i -> userStorage.create(User.builder()
+                        .login("user" + i)
+                        .email("user" + i + "@mail.ru")
+                        .birthday(LocalDate.of(1990, 1, 1))
+                        .build()))
+                .collect(Collectors.toList());
+        filmStorage.addLike(films.get(2).getId(), users.get(0).getId());
+        filmStorage.addLike(films.get(2).getId(), users.get(2).getId());
+        filmStorage.addLike(films.get(1).getId(), users.get(1).getId());
+        likesIndex.reload();
+
+        likeBuffer.add(films.get(0).getId(), users.get(0).getId(), true);
+        likeBuffer.add(films.get(1).getId(), users.get(1).getId(), false);
+        assertThrows(DataAccessResourceFailureException.class, likeBuffer::flush);
+        List<Long> recommendedAfterFailure = likesIndex.recommend(users.get(2).getId(), 10);
+        int pendingRateAfterFailure = likeBuffer.applyPending(filmStorage.get(films.get(0).getId())).getRate();
+        likeBuffer.flush();
+
+        assertAll(
+                () -> assertThat(recommendedAfterFailure).isEqualTo(List.of(films.get(0).getId())),
+                () -> assertThat(pendingRateAfterFailure).isEqualTo(1),
+                () -> assertThat(likesIndex.recommend(users.get(2).getId(), 10))
+                        .isEqualTo(List.of(films.get(0).getId())),
+                () -> assertThat(filmStorage.get(films.get(0).getId()).getRate()).isEqualTo(1),
+                () -> assertThat(filmStorage.get(films.get(1).getId()).getRate()).isEqualTo(0),
+                () -> assertThat(likeBuffer.pendingDelta(films.get(0).getId())).isEqualTo(0),
+                () -> assertThat(likeBuffer.pendingDelta(films.get(1).getId())).isEqualTo(0)
+        );
+    }
+
+    @Test
+    public void testBufferedLikesConcurrentFlush() throws Exception {
+        LikeBuffer likeBuffer = new LikeBuffer(filmStorage, userStorage, likesIndex, searchIndex,
+                discoveryIndex, true, Integer.MAX_VALUE);
+        Film testFilm = filmStorage.create(buildFilm());
+        List<User> users = IntStream.range(0, 4)
+                .mapToObj(i -> userStorage.create(User.builder()
+                        .login("user" + i)
+                        .email("user" + i + "@mail.ru")
+                        .birthday(LocalDate.of(1990, 1, 1))
+                        .build()))
+                .collect(Collectors.toList());
+        AtomicBoolean toggling = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(users.size() + 1);
+
+        try {
+            List<Future<?>> togglers = new ArrayList<>();
+            for (int i = 0; i < users.size(); i++) {
+                Long userId = users.get(i).getId();
+                int toggles = 200 + i;
+                togglers.add(executor.submit(() -> {
+                    for (int toggle = 1; toggle <= toggles; toggle++) {
+                        likeBuffer.add(testFilm.getId(), userId, toggle % 2 == 1);
+                    }
+                }));
+            }
+            Future<?> flusher = executor.submit(() -> {
+                while (toggling.get()) {
+                    likeBuffer.flush();
+                }
+            });
+            for (Future<?> toggler : togglers) {
+                toggler.get(60, TimeUnit.SECONDS);
+            }
+            toggling.set(false);
+            flusher.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        likeBuffer.flush();
+
+        assertAll(
+                () -> assertThat(filmStorage.hasLike(testFilm.getId(), users.get(0).getId())).isFalse(),
+                () -> assertThat(filmStorage.hasLike(testFilm.getId(), users.get(1).getId())).isTrue(),
+                () -> assertThat(filmStorage.hasLike(testFilm.getId(), users.get(2).getId())).isFalse(),
+                () -> assertThat(filmStorage.hasLike(testFilm.getId(), users.get(3).getId())).isTrue(),
+                () -> assertThat(filmStorage.get(testFilm.getId()).getRate()).isEqualTo(2),
+                () -> assertThat(likeBuffer.pendingDelta(testFilm.getId())).isEqualTo(0)
+        );
+    }
+
+    @Test
+    public void testGetRecommendedFilms() {
+        List<Film> films = IntStream.range(0, 4)
+                .mapToObj(i -> filmStorage.create(buildFilm()))
+                .collect(Collectors.toList());
+        List<User> users = IntStream.range(0, 3)
+                .mapToObj(i -> userStorage.create(User.builder()
+                        .login("user" + i)
+                        .email("user" + i + "@mail.ru")
+                        .birthday(LocalDate.of(1990, 1, 1))
+                        .build()))
+                .collect(Collectors.toList());
+
+        filmService.like(films.get(0).getId(), users.get(0).getId());
+        filmService.like(films.get(1).getId(), users.get(0).getId());
+        filmService.like(films.get(0).getId(), users.get(1).getId());
+        filmService.like(films.get(1).getId(), users.get(1).getId());
+        filmService.like(films.get(2).getId(), users.get(1).getId());
+        filmService.like(films.get(0).getId(), users.get(2).getId());
+        filmService.like(films.get(3).getId(), users.get(2).getId());
+
+        List<Film> recommended = filmService.findRecommendedFilms(users.get(0).getId(), 10);
+        filmService.unlike(films.get(2).getId(), users.get(1).getId());
+        List<Film> recommendedAfterUnlike = filmService.findRecommendedFilms(users.get(0).getId(), 10);
+        LikeBuffer likeBuffer = new LikeBuffer(filmStorage, userStorage, likesIndex, searchIndex,
+                discoveryIndex, true, 100);
+        likeBuffer.add(films.get(1).getId(), users.get(0).getId(), false);
+        Map<Long, Boolean> pendingLikes = likeBuffer.pendingLikes(users.get(0).getId());
+        List<Long> recommendedWithPending = likesIndex.recommend(users.get(0).getId(), pendingLikes, 10);
+        filmStorage.delete(films.get(3).getId());
+        List<Long> recommendedAfterFilmDelete = likesIndex.recommend(users.get(0).getId(), pendingLikes, 10);
+        userStorage.delete(users.get(1));
+        List<Long> recommendedAfterUserDelete = likesIndex.recommend(users.get(0).getId(), pendingLikes, 10);
+
+        assertAll(
+                () -> assertThat(recommended.stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()))
+                        .isEqualTo(List.of(films.get(2).getId(), films.get(3).getId())),
+                () -> assertThat(recommendedAfterUnlike.stream()
+                        .map(Film::getId)
+                        .collect(Collectors.toList()))
+                        .isEqualTo(List.of(films.get(3).getId())),
+                () -> assertThat(pendingLikes).isEqualTo(Map.of(films.get(1).getId(), false)),
+                () -> assertThat(recommendedWithPending)
+                        .isEqualTo(List.of(films.get(1).getId(), films.get(3).getId())),
+                () -> assertThat(recommendedAfterFilmDelete).isEqualTo(List.of(films.get(1).getId())),
+                () -> assertThat(recommendedAfterUserDelete).isEqualTo(List.of()),
+                () -> assertThrows(UserNotFoundException.class, () -> filmService.findRecommendedFilms(100L, 10))
+        );
+    }
+
+    @Test
+    public void testSearchFilms() {
+        Film matrix = buildFilm().toBuilder()
+                .name("The Matrix")
+                .description("Хакер узнаёт правду о реальности")
+                .build();
+        Film matrixReloaded = buildFilm().toBuilder()
+                .name("The Matrix Reloaded")
+                .description("Продолжение")
+                .build();
+        Film hackers = buildFilm().toBuilder()
+                .name("Хакеры")
+                .description("Молодые хакеры раскрывают заговор")
+                .build();
+        filmService.create(matrix, new BeanPropertyBindingResult(matrix, "film"));
+        filmService.create(matrixReloaded, new BeanPropertyBindingResult(matrixReloaded, "film"));
+        filmService.create(hackers, new BeanPropertyBindingResult(hackers, "film"));
+        User user = userStorage.create(User.builder()
+                .login("user")
+                .email("user@mail.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        filmService.like(matrixReloaded.getId(), user.getId());
+
+        Film renamed = matrix.toBuilder()
+                .name("Матрица")
+                .build();
+        List<Film> beforeUpdate = filmService.search("matrix", "title", 10);
+        filmService.update(renamed, new BeanPropertyBindingResult(renamed, "film"));
+
+        assertAll(
+                () -> assertThat(ids(beforeUpdate)).isEqualTo(List.of(matrixReloaded.getId(), matrix.getId())),
+                () -> assertThat(ids(filmService.search("матрицы", "title", 10))).isEqualTo(List.of(matrix.getId())),
+                () -> assertThat(ids(filmService.search("хакер", "title,description", 10)))
+                        .isEqualTo(List.of(hackers.getId(), matrix.getId())),
+                () -> assertThat(ids(filmService.search("хакер", "description", 10)))
+                        .isEqualTo(List.of(matrix.getId(), hackers.getId())),
+                () -> assertThat(ids(filmService.search("reload", "description", 10))).isEqualTo(List.of()),
+                () -> assertThat(ids(filmService.search("mat", "title", 10))).isEqualTo(List.of(matrixReloaded.getId())),
+                () -> assertThat(ids(filmService.search("ma", "title", 10))).isEqualTo(List.of()),
+                () -> assertThrows(ValidationException.class, () -> filmService.search("matrix", "director", 10)),
+                () -> assertThat(ids(filmService.search("матрицы", "title", 1))).isEqualTo(List.of(matrix.getId())),
+                () -> assertThat(ids(filmService.search("хакер", "title,description", 1000)))
+                        .isEqualTo(List.of(hackers.getId(), matrix.getId())),
+                () -> assertThrows(ValidationException.class, () -> filmService.search("matrix", "title", 0)),
+                () -> assertThrows(ValidationException.class, () -> filmService.search("matrix", "title", 1001)),
+                () -> assertThrows(ValidationException.class,
+                        () -> filmService.search("matrix", "title", Integer.MAX_VALUE))
+        );
+    }
+
+    @Test
+    public void testFilmVersionChangesOnWrites() {
+        Film testFilm = filmStorage.create(buildFilm());
+        User user = userStorage.create(User.builder()
+                .login("user")
+                .email("user@mail.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        long createdVersion = filmStorage.getVersion(testFilm.getId());
+        String createdETag = filmService.findETag(testFilm.getId());
+
+        filmService.like(testFilm.getId(), user.getId());
+        filmService.like(testFilm.getId(), user.getId());
+        long likedVersion = filmStorage.getVersion(testFilm.getId());
+        filmStorage.update(testFilm.toBuilder()
+                .name("updated")
+                .build());
+
+        assertAll(
+                () -> assertThat(createdVersion).isEqualTo(0L),
+                () -> assertThat(likedVersion).isEqualTo(1L),
+                () -> assertThat(filmStorage.getVersion(testFilm.getId())).isEqualTo(2L),
+                () -> assertThat(filmService.findETag(testFilm.getId())).isNotEqualTo(createdETag),
+                () -> assertThat(userStorage.getVersion(user.getId())).isEqualTo(1L),
+                () -> assertThrows(FilmNotFoundException.class, () -> filmService.findETag(100L))
+        );
+    }
+
+    @Test
+    public void testFindAllFilmsQueryCount() {
+        IntStream.range(0, 20).forEach(i -> filmStorage.create(buildFilm()));
+
+        queryCounter.start();
+        Collection<Film> films = filmService.findAll();
+        int queries = queryCounter.stop();
+
+        assertAll(
+                () -> assertThat(films.size()).isEqualTo(20),
+                () -> assertThat(queries).isBetween(1, 2),
+                () -> assertThat(meterRegistry.get("filmorate.repository")
+                        .tag("class", "FilmsRepository")
+                        .tag("method", "findAll()")
+                        .timer()
+                        .count())
+                        .isEqualTo(1L)
+        );
+    }
+
+    @Test
+    public void testJdbcTemplateKeepsBootSettings() {
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class,
+                        JdbcTemplateAutoConfiguration.class))
+                .withBean(SimpleMeterRegistry.class)
+                .withUserConfiguration(QueryCounter.class, JdbcTemplateDecorator.class)
+                .withPropertyValues("spring.datasource.url=jdbc:h2:mem:settings",
+                        "spring.jdbc.template.fetch-size=50", "spring.jdbc.template.query-timeout=7s")
+                .run(context -> {
+                    JdbcTemplate template = context.getBean(JdbcTemplate.class);
+                    QueryCounter counter = context.getBean(QueryCounter.class);
+
+                    counter.start();
+                    template.queryForObject("select 1", Integer.class);
+                    int queries = counter.stop();
+
+                    assertAll(
+                            () -> assertThat(template).isInstanceOf(CountingJdbcTemplate.class),
+                            () -> assertThat(template.getFetchSize()).isEqualTo(50),
+                            () -> assertThat(template.getQueryTimeout()).isEqualTo(7),
+                            () -> assertThat(queries).isEqualTo(1)
+                    );
+                });
+    }
+
+    @Test
+    public void testHeavyBulkheadRejectsWhenFull() {
+        Film film = filmStorage.create(buildFilm());
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = environment.getRequiredProperty("filmorate.execution.heavy.threads", Integer.class);
+        int queue = environment.getRequiredProperty("filmorate.execution.heavy.queue", Integer.class);
+        Bulkhead heavyBulkhead = new ExecutionConfiguration("async", queryCounter, meterRegistry)
+                .heavyBulkhead(threads, queue);
+
+        List<CompletableFuture<Boolean>> running = IntStream.range(0, threads + queue)
+                .mapToObj(i -> heavyBulkhead.submit(() -> {
+                    try {
+                        return release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }))
+                .collect(Collectors.toList());
+        CompletableFuture<List<Film>> rejected = heavyBulkhead.submit(() ->
+                filmService.findMostPopular(10, null, null, null));
+        release.countDown();
+        running.forEach(CompletableFuture::join);
+
+        IntSupplier queries = queryCounter.start();
+        List<Film> popular = heavyBulkhead.submit(() -> filmService.findMostPopular(10, null, null, null)).join();
+        queryCounter.stop();
+        heavyBulkhead.shutdown();
+
+        CompletionException rejection = assertThrows(CompletionException.class, rejected::join);
+        assertAll(
+                () -> assertThat(rejection.getCause()).isInstanceOf(ServiceUnavailableException.class),
+                () -> assertThat(running.stream().allMatch(CompletableFuture::join)).isTrue(),
+                () -> assertThat(popular.size()).isEqualTo(1),
+                () -> assertThat(popular.get(0).getId()).isEqualTo(film.getId()),
+                () -> assertThat(queries.getAsInt()).isGreaterThan(0)
+        );
+    }
+
+    @Test
+    public void testDiscoverFilms() {
+        Film drama = buildFilm().toBuilder()
+                .genres(List.of(Genre.builder().id(1L).build(), Genre.builder().id(2L).build()))
+                .build();
+        Film comedy = buildFilm().toBuilder()
+                .releaseDate(LocalDate.of(2001, 5, 1))
+                .mpa(Mpa.builder().id(2L).build())
+                .genres(List.of(Genre.builder().id(1L).build()))
+                .build();
+        Film thriller = buildFilm().toBuilder()
+                .genres(List.of(Genre.builder().id(4L).build()))
+                .build();
+        Film untagged = buildFilm();
+        List.of(drama, comedy, thriller, untagged)
+                .forEach(film -> filmService.create(film, new BeanPropertyBindingResult(film, "film")));
+        User user = userStorage.create(User.builder()
+                .login("user")
+                .email("user@mail.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        filmService.like(comedy.getId(), user.getId());
+
+        List<Long> anyGenre = ids(filmService.discover("any:1", null, null, null, 10));
+        List<Long> byMpa = ids(filmService.discover("1,4", List.of(1L), null, null, 10));
+        FilmDiscoveryIndex parallelIndex = new FilmDiscoveryIndex(filmStorage, 2);
+        parallelIndex.reload();
+
+        Film retagged = thriller.toBuilder()
+                .genres(List.of(Genre.builder().id(2L).build()))
+                .build();
+        filmService.update(retagged, new BeanPropertyBindingResult(retagged, "film"));
+
+        assertAll(
+                () -> assertThat(anyGenre).isEqualTo(List.of(comedy.getId(), drama.getId())),
+                () -> assertThat(ids(filmService.discover("all:1,2", null, null, null, 10)))
+                        .isEqualTo(List.of(drama.getId())),
+                () -> assertThat(byMpa).isEqualTo(List.of(drama.getId(), thriller.getId())),
+                () -> assertThat(ids(filmService.discover(null, null, 1, null, 10)))
+                        .isEqualTo(List.of(comedy.getId())),
+                () -> assertThat(ids(filmService.discover(null, List.of(1L), null, 1967, 2)))
+                        .isEqualTo(List.of(drama.getId(), thriller.getId())),
+                () -> assertThat(ids(filmService.discover("any:4", null, null, null, 10))).isEqualTo(List.of()),
+                () -> assertThat(parallelIndex.discover(GenreMask.bit(1), false, FilmDiscoveryIndex.ANY_MPA, 0, 0, 10))
+                        .isEqualTo(anyGenre),
+                () -> assertThrows(ValidationException.class,
+                        () -> filmService.discover("some:1", null, null, null, 10)),
+                () -> assertThat(assertThrows(ValidationException.class,
+                        () -> filmService.discover("any:drama", null, null, null, 10)).getMessage())
+                        .isEqualTo("Id жанра для подбора должен быть числом, получено: drama"),
+                () -> assertThrows(ValidationException.class,
+                        () -> filmService.discover("any:63", null, null, null, 10)),
+                () -> assertThrows(ValidationException.class,
+                        () -> filmService.discover(null, List.of(64L), null, null, 10)),
+                () -> assertThrows(ValidationException.class, () -> filmService.discover(null, null, null, null, 0))
+        );
+    }
+
+    @Test
+    public void testStreamAllFilmsOverHttp() throws Exception {
+        List<Film> created = filmStorage.createAll(List.of(buildFilm(), buildFilm(), buildFilm()));
+        User user = userStorage.create(User.builder()
+                .login("user")
+                .email("user@mail.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        filmStorage.addLike(created.get(1).getId(), user.getId());
+
+        MvcResult result = mockMvc.perform(get("/films").param("stream", "true")).andReturn();
+        String json = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<Film> streamed = objectMapper.readValue(json, new TypeReference<List<Film>>() {
+        });
+
+        assertAll(
+                () -> assertThat(streamed).isEqualTo(created.stream()
+                        .map(film -> filmStorage.get(film.getId()))
+                        .collect(Collectors.toList())),
+                () -> assertThat(streamed.get(1).getRate()).isEqualTo(1)
+        );
+    }
+
+    @Test
+    public void testHttpCaching() throws Exception {
+        Film film = filmStorage.create(buildFilm());
+        Film other = filmStorage.create(buildFilm());
+        String filmTag = mockMvc.perform(get("/films/" + film.getId()))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader("ETag");
+        String otherTag = mockMvc.perform(get("/films/" + other.getId()))
+                .andReturn()
+                .getResponse()
+                .getHeader("ETag");
+        MvcResult genres = mockMvc.perform(get("/genres")).andReturn();
+        String genresTag = mockMvc.perform(asyncDispatch(genres))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=3600, public"))
+                .andReturn()
+                .getResponse()
+                .getHeader("ETag");
+
+        mockMvc.perform(get("/films/" + film.getId()).header("If-None-Match", filmTag))
+                .andExpect(status().isNotModified());
+        MvcResult cachedGenres = mockMvc.perform(get("/genres").header("If-None-Match", genresTag)).andReturn();
+        mockMvc.perform(asyncDispatch(cachedGenres))
+                .andExpect(status().isNotModified());
+        assertThat(filmTag).isNotEqualTo(otherTag);
+    }
+
+    @Test
+    public void testBulkImportFilmsAndLikes() throws IOException {
+        User user = userStorage.create(User.builder()
+                .login("user")
+                .email("user@mail.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+
+        ImportResult films = bulkService.importFilms(ndjson(
+                "{\"name\":\"Bulk\",\"releaseDate\":\"1999-01-01\",\"duration\":100,\"mpa\":{\"id\":1}}",
+                "{\"name\":\"No date\",\"duration\":100,\"mpa\":{\"id\":1}}",
+                "{\"name\":\"Bulk\","));
+        Long filmId = filmStorage.getAll().keySet().iterator().next();
+        ImportResult likes = bulkService.importLikes(ndjson(
+                "{\"userId\":" + user.getId() + ",\"filmId\":" + filmId + "}",
+                "{\"userId\":" + user.getId() + ",\"filmId\":100}",
+                "{\"userId\":100,\"filmId\":" + filmId + "}",
+                "{\"userId\":" + user.getId() + "}"));
+        ImportResult rolledBack = bulkService.importFilms(ndjson(
+                "{\"name\":\"Kept out\",\"releaseDate\":\"1999-01-01\",\"duration\":100,\"mpa\":{\"id\":1}}",
+                "{\"name\":\"" + "x".repeat(101) + "\",\"releaseDate\":\"1999-01-01\",\"duration\":100," +
+                        "\"mpa\":{\"id\":1}}"));
+
+        assertAll(
+                () -> assertThat(films.getImported()).isEqualTo(1),
+                () -> assertThat(lines(films)).isEqualTo(List.of(2L, 3L)),
+                () -> assertThat(films.getErrors().get(0).getError()).isEqualTo("Не указана дата релиза!"),
+                () -> assertThat(likes.getImported()).isEqualTo(1),
+                () -> assertThat(lines(likes)).isEqualTo(List.of(2L, 3L, 4L)),
+                () -> assertThat(filmStorage.get(filmId).getRate()).isEqualTo(1),
+                () -> assertThat(likesIndex.recommend(user.getId(), 10)).isEqualTo(List.of()),
+                () -> assertThat(filmStorage.hasLike(filmId, user.getId())).isTrue(),
+                () -> assertThat(rolledBack.getImported()).isEqualTo(0),
+                () -> assertThat(lines(rolledBack)).isEqualTo(List.of(1L, 2L)),
+                () -> assertThat(filmStorage.getAll().size()).isEqualTo(1),
+                () -> assertThat(filmService.search("kept", "title", 10)).isEqualTo(List.of())
+        );
+    }
+
+    @Test
+    public void testBulkImportIndexesAfterCommit() throws IOException {
+        User user = userStorage.create(User.builder()
+                .login("user")
+                .email("user@mail.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        User other = userStorage.create(User.builder()
+                .login("other")
+                .email("other@mail.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        Film shared = filmStorage.create(buildFilm());
+        Film recommended = filmStorage.create(buildFilm());
+        String sharedLikes = "{\"userId\":" + user.getId() + ",\"filmId\":" + shared.getId() + "}\n" +
+                "{\"userId\":" + other.getId() + ",\"filmId\":" + shared.getId() + "}";
+
+        ImportResult likes = bulkService.importLikes(ndjson(sharedLikes));
+        ImportResult repeated = bulkService.importLikes(ndjson(sharedLikes));
+        transactionTemplate.executeWithoutResult(status -> {
+            try {
+                bulkService.importFilms(ndjson(
+                        "{\"name\":\"Rolled back\",\"releaseDate\":\"1999-01-01\",\"duration\":100," +
+                                "\"mpa\":{\"id\":1}}"));
+                bulkService.importLikes(ndjson(
+                        "{\"userId\":" + other.getId() + ",\"filmId\":" + recommended.getId() + "}"));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            status.setRollbackOnly();
+        });
+
+        assertAll(
+                () -> assertThat(likes.getImported()).isEqualTo(2),
+                () -> assertThat(repeated.getImported()).isEqualTo(0),
+                () -> assertThat(filmStorage.get(shared.getId()).getRate()).isEqualTo(2),
+                () -> assertThat(filmStorage.hasLike(recommended.getId(), other.getId())).isFalse(),
+                () -> assertThat(likesIndex.recommend(user.getId(), 10)).isEqualTo(List.of()),
+                () -> assertThat(filmService.search("rolled", "title", 10)).isEqualTo(List.of())
+        );
+    }
+
+    @Test
+    public void testGenreMaskProjection() {
+        Film film = filmStorage.create(buildFilm().toBuilder()
+                .genres(List.of(Genre.builder().id(3L).build(), Genre.builder().id(1L).build()))
+                .build());
+        Film other = filmStorage.create(buildFilm());
+        List<Long> createdGenres = genreIds(filmStorage.get(film.getId()));
+
+        filmStorage.update(other.toBuilder()
+                .genres(List.of(Genre.builder().id(6L).build()))
+                .build());
+        List<Long> updatedGenres = genreIds(filmStorage.getAll(List.of(other.getId())).get(0));
+        int consistent = filmsRepository.countInconsistentGenreMasks();
+
+        jdbcTemplate.update("update films set genre_mask = 0 where id = ?", film.getId());
+        int inconsistent = filmsRepository.countInconsistentGenreMasks();
+        List<Long> staleGenres = genreIds(filmStorage.get(film.getId()));
+        int rebuilt = filmsRepository.rebuildGenreMasks();
+        jdbcTemplate.update("update films set genre_mask = null where id = ?", other.getId());
+        long versionBeforeFill = filmStorage.getVersion(other.getId());
+        filmsRepository.fillMissingGenreMasks();
+
+        assertAll(
+                () -> assertThat(createdGenres).isEqualTo(List.of(1L, 3L)),
+                () -> assertThat(updatedGenres).isEqualTo(List.of(6L)),
+                () -> assertThat(consistent).isEqualTo(0),
+                () -> assertThat(inconsistent).isEqualTo(1),
+                () -> assertThat(staleGenres).isEqualTo(List.of()),
+                () -> assertThat(rebuilt).isEqualTo(1),
+                () -> assertThat(filmsRepository.countInconsistentGenreMasks()).isEqualTo(0),
+                () -> assertThat(genreIds(filmStorage.get(film.getId()))).isEqualTo(List.of(1L, 3L)),
+                () -> assertThat(genreIds(filmStorage.get(other.getId()))).isEqualTo(List.of(6L)),
+                () -> assertThat(filmStorage.getVersion(other.getId())).isEqualTo(versionBeforeFill)
+        );
+    }
+
     @Test
     public void testGetAllFilmsEmptyList() {
         Collection<Film> films = filmStorage.getAll().values();
@@ -140,6 +1083,29 @@ class FilmTests {
                 .isEqualTo(0);
     }
 
+    private List<Long> genreIds(Film film) {
+        return film.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toList());
+    }
+
+    private InputStream ndjson(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<Long> lines(ImportResult result) {
+        return result.getErrors().stream()
+                .map(ImportError::getLine)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private List<Long> ids(List<Film> films) {
+        return films.stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+    }
+
     private Film buildFilm() {
         return Film.builder()
                 .name("nisi eiusmod")
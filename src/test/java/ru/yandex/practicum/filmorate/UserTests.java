@@ -1,30 +1,116 @@
 package ru.yandex.practicum.filmorate;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.ImportError;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.repository.BatchLoader;
+import ru.yandex.practicum.filmorate.repository.EventsRepository;
+import ru.yandex.practicum.filmorate.repository.FriendshipRepository;
+import ru.yandex.practicum.filmorate.repository.InstanceEpoch;
+import ru.yandex.practicum.filmorate.service.BulkService;
+import ru.yandex.practicum.filmorate.service.EventLog;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.FriendGraph;
 import ru.yandex.practicum.filmorate.storage.UserDbStorage;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.Optional;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
-@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@AutoConfigureMockMvc
 @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
 class UserTests {
-    private final UserDbStorage userStorage;
+    @Autowired
+    private UserDbStorage userStorage;
+
+    @Autowired
+    private FriendshipRepository friendshipRepository;
+
+    @Autowired
+    private FriendGraph friendGraph;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FilmDbStorage filmStorage;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private BatchLoader batchLoader;
+
+    @Autowired
+    private EventsRepository eventsRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private InstanceEpoch instanceEpoch;
+
+    @Autowired
+    private BulkService bulkService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
     @Test
     public void testGetUserPositiveCase() throws UserNotFoundException {
@@ -127,6 +213,315 @@ class UserTests {
         );
     }
 
+    @Test
+    public void testGetFriends() {
+        User testUser1 = buildUser();
+        User testUser2 = buildUser();
+        User testUser3 = buildUser();
+
+        userStorage.create(testUser1);
+        userStorage.create(testUser2);
+        userStorage.create(testUser3);
+
+        addFriend(testUser1.getId(), testUser2.getId());
+        addFriend(testUser1.getId(), testUser3.getId());
+        addFriend(testUser2.getId(), testUser1.getId());
+
+        List<User> friends = userStorage.getFriends(testUser1.getId());
+
+        assertAll(
+                () -> assertThat(friends.size()).isEqualTo(2),
+                () -> assertThat(friends.get(0).getId()).isEqualTo(testUser2.getId()),
+                () -> assertThat(friends.get(0).getFriends()).isEqualTo(Set.of(testUser1.getId())),
+                () -> assertThat(friends.get(1).getId()).isEqualTo(testUser3.getId()),
+                () -> assertThat(friends.get(1).getFriends()).isEqualTo(Set.of()),
+                () -> assertThat(userStorage.get(testUser1.getId()).getFriends())
+                        .isEqualTo(Set.of(testUser2.getId(), testUser3.getId()))
+        );
+    }
+
+    @Test
+    public void testGetCommonFriends() {
+        User testUser1 = buildUser();
+        User testUser2 = buildUser();
+        User testUser3 = buildUser();
+        User testUser4 = buildUser();
+
+        userStorage.create(testUser1);
+        userStorage.create(testUser2);
+        userStorage.create(testUser3);
+        userStorage.create(testUser4);
+
+        addFriend(testUser1.getId(), testUser3.getId());
+        addFriend(testUser1.getId(), testUser4.getId());
+        addFriend(testUser2.getId(), testUser3.getId());
+
+        List<User> commonFriends = userStorage.getCommonFriends(testUser1.getId(), testUser2.getId());
+
+        assertAll(
+                () -> assertThat(commonFriends.size()).isEqualTo(1),
+                () -> assertThat(commonFriends.get(0).getId()).isEqualTo(testUser3.getId())
+        );
+    }
+
+    @Test
+    public void testGetRecommendedFriends() {
+        List<User> users = List.of(buildUser(), buildUser(), buildUser(), buildUser(), buildUser());
+        users.forEach(userStorage::create);
+
+        addFriend(users.get(0).getId(), users.get(1).getId());
+        addFriend(users.get(0).getId(), users.get(2).getId());
+        addFriend(users.get(1).getId(), users.get(3).getId());
+        addFriend(users.get(2).getId(), users.get(3).getId());
+        addFriend(users.get(1).getId(), users.get(4).getId());
+        addFriend(users.get(2).getId(), users.get(0).getId());
+        friendGraph.reload();
+
+        List<User> recommended = userService.findRecommendedFriends(users.get(0).getId(), 10);
+        userService.addFriend(users.get(0).getId(), users.get(3).getId());
+        List<User> recommendedAfterAdd = userService.findRecommendedFriends(users.get(0).getId(), 10);
+        transactionTemplate.executeWithoutResult(status -> {
+            userStorage.removeFriend(users.get(0).getId(), users.get(1).getId());
+            status.setRollbackOnly();
+        });
+        List<User> recommendedAfterRollback = userService.findRecommendedFriends(users.get(0).getId(), 10);
+        userStorage.delete(users.get(4));
+        List<User> recommendedAfterDelete = userService.findRecommendedFriends(users.get(0).getId(), 10);
+
+        assertAll(
+                () -> assertThat(recommended.size()).isEqualTo(2),
+                () -> assertThat(recommended.get(0).getId()).isEqualTo(users.get(3).getId()),
+                () -> assertThat(recommended.get(1).getId()).isEqualTo(users.get(4).getId()),
+                () -> assertThat(recommendedAfterAdd.size()).isEqualTo(1),
+                () -> assertThat(recommendedAfterAdd.get(0).getId()).isEqualTo(users.get(4).getId()),
+                () -> assertThat(recommendedAfterRollback.size()).isEqualTo(1),
+                () -> assertThat(recommendedAfterRollback.get(0).getId()).isEqualTo(users.get(4).getId()),
+                () -> assertThat(recommendedAfterDelete.size()).isEqualTo(0),
+                () -> assertThrows(UserNotFoundException.class, () -> userService.findRecommendedFriends(100L, 10)),
+                () -> assertThat(userService.findRecommendedFriends(users.get(2).getId(), 1000).size()).isEqualTo(1),
+                () -> assertThrows(ValidationException.class,
+                        () -> userService.findRecommendedFriends(users.get(0).getId(), 0)),
+                () -> assertThrows(ValidationException.class,
+                        () -> userService.findRecommendedFriends(users.get(0).getId(), 1001)),
+                () -> assertThrows(ValidationException.class,
+                        () -> userService.findRecommendedFriends(users.get(0).getId(), Integer.MAX_VALUE))
+        );
+    }
+
+    @Test
+    public void testUserVersionChangesOnWrites() {
+        User user = userStorage.create(buildUser());
+        User friend = userStorage.create(buildUser());
+        String createdETag = userService.findETag(user.getId());
+
+        userService.addFriend(user.getId(), friend.getId());
+        String afterAddFriendETag = userService.findETag(user.getId());
+        userStorage.update(user.toBuilder()
+                .name("updated")
+                .build());
+
+        assertAll(
+                () -> assertThat(createdETag).isEqualTo(user.getId() + "-0-" + instanceEpoch.get()),
+                () -> assertThat(afterAddFriendETag).isEqualTo(user.getId() + "-1-" + instanceEpoch.get()),
+                () -> assertThat(userService.findETag(user.getId()))
+                        .isEqualTo(user.getId() + "-2-" + instanceEpoch.get()),
+                () -> assertThat(userService.findETag(friend.getId()))
+                        .isEqualTo(friend.getId() + "-0-" + instanceEpoch.get()),
+                () -> assertThrows(UserNotFoundException.class, () -> userService.findETag(100L))
+        );
+    }
+
+    @Test
+    public void testGetFeed() {
+        User user = userStorage.create(buildUser());
+        User friend = userStorage.create(buildUser());
+        Film film = filmStorage.create(Film.builder()
+                .name("nisi eiusmod")
+                .description("adipisicing")
+                .releaseDate(LocalDate.of(1967, 3, 25))
+                .duration(100)
+                .rate(0)
+                .mpa(Mpa.builder()
+                        .id(1L)
+                        .build())
+                .build());
+
+        userService.addFriend(user.getId(), friend.getId());
+        userService.addFriend(user.getId(), friend.getId());
+        filmService.like(film.getId(), user.getId());
+        filmService.like(film.getId(), user.getId());
+        filmService.unlike(film.getId(), user.getId());
+        userService.removeFriend(user.getId(), friend.getId());
+        userService.removeFriend(user.getId(), friend.getId());
+
+        List<Event> feed = userService.findFeed(user.getId(), null, null);
+        List<Event> page = userService.findFeed(user.getId(), feed.get(0).getEventId(), 2);
+
+        assertAll(
+                () -> assertThat(feed.size()).isEqualTo(4),
+                () -> assertThat(feed.get(0).getEventType()).isEqualTo(Event.EventType.FRIEND),
+                () -> assertThat(feed.get(0).getOperation()).isEqualTo(Event.Operation.ADD),
+                () -> assertThat(feed.get(0).getEntityId()).isEqualTo(friend.getId()),
+                () -> assertThat(feed.get(1).getEventType()).isEqualTo(Event.EventType.LIKE),
+                () -> assertThat(feed.get(1).getOperation()).isEqualTo(Event.Operation.ADD),
+                () -> assertThat(feed.get(1).getEntityId()).isEqualTo(film.getId()),
+                () -> assertThat(feed.get(2).getOperation()).isEqualTo(Event.Operation.REMOVE),
+                () -> assertThat(feed.get(3).getEventType()).isEqualTo(Event.EventType.FRIEND),
+                () -> assertThat(feed.get(3).getOperation()).isEqualTo(Event.Operation.REMOVE),
+                () -> assertThat(page.size()).isEqualTo(2),
+                () -> assertThat(page.get(0).getEventId()).isEqualTo(feed.get(1).getEventId()),
+                () -> assertThat(page.get(1).getEventId()).isEqualTo(feed.get(2).getEventId()),
+                () -> assertThat(userService.findFeed(friend.getId(), null, null).size()).isEqualTo(0),
+                () -> assertThrows(UserNotFoundException.class, () -> userService.findFeed(100L, null, null)),
+                () -> assertThrows(ValidationException.class, () -> userService.findFeed(user.getId(), null, 0))
+        );
+    }
+
+    @Test
+    public void testFeedSubscribeRacesFlush() throws Exception {
+        User user = userStorage.create(buildUser());
+        EventLog eventLog = new EventLog(eventsRepository, 5, 60000, 100000, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (long filmId = 1; filmId <= 300; filmId++) {
+                    eventLog.append(user.getId(), filmId, Event.EventType.LIKE, Event.Operation.ADD);
+                    eventLog.flush();
+                }
+            });
+            Future<?> reader = executor.submit(() -> {
+                for (int i = 0; i < 100; i++) {
+                    eventLog.subscribe(user.getId(), 0L).complete();
+                }
+            });
+            writer.get(30, TimeUnit.SECONDS);
+            reader.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Event> feed = eventLog.findPage(user.getId(), 0L, 1000);
+        assertAll(
+                () -> assertThat(feed.size()).isEqualTo(300),
+                () -> assertThat(feed.get(299).getEntityId()).isEqualTo(300L)
+        );
+    }
+
+    @Test
+    public void testEventLogRequeuesFailedBatch() {
+        User user = userStorage.create(buildUser());
+        AtomicBoolean failed = new AtomicBoolean();
+        EventLog eventLog = new EventLog(new EventsRepository(jdbcTemplate) {
+            @Override
+            public List<Event> saveAll(List<Event> events) {
+                if (failed.compareAndSet(false, true)) {
+                    throw new DataAccessResourceFailureException("База данных недоступна");
+                }
+                return super.saveAll(events);
+            }
+        }, 500, 60000, 100000, 2);
+
+        eventLog.append(user.getId(), 1L, Event.EventType.FRIEND, Event.Operation.ADD);
+        eventLog.append(user.getId(), 2L, Event.EventType.FRIEND, Event.Operation.ADD);
+
+        assertThrows(DataAccessResourceFailureException.class, eventLog::flush);
+        List<Event> feed = eventLog.findPage(user.getId(), 0L, 10);
+
+        assertAll(
+                () -> assertThat(feed.size()).isEqualTo(2),
+                () -> assertThat(feed.get(0).getEntityId()).isEqualTo(1L),
+                () -> assertThat(feed.get(1).getEntityId()).isEqualTo(2L)
+        );
+    }
+
+    @Test
+    public void testEventLogCapsPendingEvents() {
+        User user = userStorage.create(buildUser());
+        AtomicBoolean failed = new AtomicBoolean();
+        EventLog eventLog = new EventLog(new EventsRepository(jdbcTemplate) {
+            @Override
+            public List<Event> saveAll(List<Event> events) {
+                if (failed.compareAndSet(false, true)) {
+                    throw new DataAccessResourceFailureException("База данных недоступна");
+                }
+                return super.saveAll(events);
+            }
+        }, 500, 60000, 3, 2);
+
+        for (long filmId = 1; filmId <= 5; filmId++) {
+            eventLog.append(user.getId(), filmId, Event.EventType.LIKE, Event.Operation.ADD);
+        }
+        assertThrows(DataAccessResourceFailureException.class, eventLog::flush);
+        eventLog.append(user.getId(), 6L, Event.EventType.LIKE, Event.Operation.ADD);
+        List<Event> feed = eventLog.findPage(user.getId(), 0L, 10);
+
+        assertAll(
+                () -> assertThat(feed.size()).isEqualTo(3),
+                () -> assertThat(feed.get(0).getEntityId()).isEqualTo(4L),
+                () -> assertThat(feed.get(2).getEntityId()).isEqualTo(6L)
+        );
+    }
+
+    @Test
+    public void testUserETag() throws Exception {
+        User user = userStorage.create(buildUser());
+        User friend = userStorage.create(buildUser());
+        String userTag = eTag("/users/" + user.getId());
+        String friendTag = eTag("/users/" + friend.getId());
+
+        mockMvc.perform(get("/users/" + user.getId()).header("If-None-Match", userTag))
+                .andExpect(status().isNotModified());
+
+        userService.addFriend(friend.getId(), user.getId());
+        String requestedTag = eTag("/users/" + friend.getId());
+        userService.addFriend(user.getId(), friend.getId());
+        String confirmedTag = eTag("/users/" + friend.getId());
+        userService.removeFriend(user.getId(), friend.getId());
+        String unconfirmedTag = eTag("/users/" + friend.getId());
+        userStorage.delete(user);
+
+        assertAll(
+                () -> assertThat(userTag).isNotEqualTo(friendTag),
+                () -> assertThat(confirmedTag).isNotEqualTo(requestedTag),
+                () -> assertThat(unconfirmedTag).isNotEqualTo(confirmedTag),
+                () -> assertThat(eTag("/users/" + friend.getId())).isNotEqualTo(unconfirmedTag),
+                () -> mockMvc.perform(get("/users/" + friend.getId()).header("If-None-Match", friendTag))
+                        .andExpect(status().isOk())
+        );
+    }
+
+    @Test
+    public void testBatchLoaderGroupsKeys() {
+        User user = userStorage.create(buildUser());
+        User friend = userStorage.create(buildUser());
+        userService.addFriend(user.getId(), friend.getId());
+        List<Collection<Long>> batches = new ArrayList<>();
+
+        BatchLoader.Session session = batchLoader.session();
+        BatchLoader.Loader<Long, Set<Long>> loader = session.loader(ids -> {
+            batches.add(new ArrayList<>(ids));
+            return friendshipRepository.findFriendsIds(ids);
+        });
+        CompletableFuture<Set<Long>> userFriends = loader.load(user.getId());
+        CompletableFuture<Set<Long>> friendFriends = loader.load(friend.getId());
+        CompletableFuture<Set<Long>> sameUserFriends = loader.load(user.getId());
+        CompletableFuture<Map<Long, User>> users = session.query(() -> userStorage.getAll(
+                        List.of(user.getId(), friend.getId())).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity())));
+        session.dispatch();
+
+        assertAll(
+                () -> assertThat(batches.size()).isEqualTo(1),
+                () -> assertThat(batches.get(0).size()).isEqualTo(2),
+                () -> assertThat(userFriends.join()).isEqualTo(Set.of(friend.getId())),
+                () -> assertThat(friendFriends.join()).isNull(),
+                () -> assertThat(sameUserFriends.join()).isEqualTo(Set.of(friend.getId())),
+                () -> assertThat(users.join().get(user.getId()).getFriends()).isEqualTo(Set.of(friend.getId())),
+                () -> assertThat(users.join().get(friend.getId()).getFriends()).isEqualTo(Set.of())
+        );
+    }
+
     @Test
     public void testGetAllUsersEmptyList() {
         Collection<User> users = userStorage.getAll().values();
@@ -135,6 +530,121 @@ class UserTests {
                 .isEqualTo(0);
     }
 
+    @Test
+    public void testStreamAllUsersAcrossPages() {
+        List<User> created = userStorage.createAll(IntStream.range(0, 501)
+                .mapToObj(i -> buildUser())
+                .collect(Collectors.toList()));
+        User first = created.get(0);
+        User last = created.get(created.size() - 1);
+        addFriend(first.getId(), last.getId());
+        addFriend(last.getId(), first.getId());
+
+        List<User> streamed = new ArrayList<>();
+        userStorage.forEach(streamed::add);
+        Map<Long, User> all = userStorage.getAll();
+
+        assertAll(
+                () -> assertThat(streamed.stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()))
+                        .isEqualTo(created.stream()
+                                .map(User::getId)
+                                .collect(Collectors.toList())),
+                () -> assertThat(streamed.get(0).getFriends()).isEqualTo(Set.of(last.getId())),
+                () -> assertThat(streamed.get(500).getFriends()).isEqualTo(Set.of(first.getId())),
+                () -> assertThat(all.size()).isEqualTo(501),
+                () -> assertThat(all.get(last.getId()).getFriends()).isEqualTo(Set.of(first.getId()))
+        );
+    }
+
+    @Test
+    public void testStreamAllUsersOverHttp() throws Exception {
+        List<User> created = userStorage.createAll(List.of(buildUser(), buildUser(), buildUser()));
+        addFriend(created.get(0).getId(), created.get(2).getId());
+        addFriend(created.get(2).getId(), created.get(0).getId());
+        addFriend(created.get(1).getId(), created.get(0).getId());
+
+        MvcResult result = mockMvc.perform(get("/users").param("stream", "true")).andReturn();
+        String json = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<User> streamed = objectMapper.readValue(json, new TypeReference<List<User>>() {
+        });
+
+        assertAll(
+                () -> assertThat(streamed).isEqualTo(created.stream()
+                        .map(user -> userStorage.get(user.getId()))
+                        .collect(Collectors.toList())),
+                () -> assertThat(streamed.get(0).getFriends()).isEqualTo(Set.of(created.get(2).getId())),
+                () -> assertThat(streamed.get(1).getFriends()).isEqualTo(Set.of(created.get(0).getId()))
+        );
+    }
+
+    @Test
+    public void testBulkImportUsersAndFriends() throws IOException {
+        ImportResult users = bulkService.importUsers(ndjson(
+                "{\"email\":\"first@mail.ru\",\"login\":\"first\",\"birthday\":\"1990-01-01\"}",
+                "{\"email\":\"second@mail.ru\",\"login\":\"second\",\"birthday\":\"1990-01-01\"}",
+                "{\"email\":\"nologin@mail.ru\",\"birthday\":\"1990-01-01\"}",
+                "{\"email\":"));
+        List<Long> ids = new ArrayList<>(userStorage.getAll().keySet());
+        ImportResult friends = bulkService.importFriends(ndjson(
+                "{\"id\":" + ids.get(0) + ",\"friendId\":" + ids.get(1) + "}",
+                "{\"id\":" + ids.get(0) + ",\"friendId\":100}",
+                "{\"id\":" + ids.get(0) + "}"));
+        ImportResult rolledBack = bulkService.importUsers(ndjson(
+                "{\"email\":\"kept@mail.ru\",\"login\":\"kept\",\"birthday\":\"1990-01-01\"}",
+                "{\"email\":\"long@mail.ru\",\"login\":\"" + "x".repeat(51) + "\",\"birthday\":\"1990-01-01\"}"));
+
+        assertAll(
+                () -> assertThat(users.getImported()).isEqualTo(2),
+                () -> assertThat(lines(users)).isEqualTo(List.of(3L, 4L)),
+                () -> assertThat(users.getErrors().stream().allMatch(error -> error.getError() != null)).isTrue(),
+                () -> assertThat(userStorage.get(ids.get(0)).getName()).isEqualTo("first"),
+                () -> assertThat(friends.getImported()).isEqualTo(1),
+                () -> assertThat(lines(friends)).isEqualTo(List.of(2L, 3L)),
+                () -> assertThat(userService.findFriends(ids.get(0)).stream()
+                        .map(User::getId)
+                        .collect(Collectors.toList()))
+                        .isEqualTo(List.of(ids.get(1))),
+                () -> assertThat(userService.findFeed(ids.get(0), null, null).size()).isEqualTo(1),
+                () -> assertThat(rolledBack.getImported()).isEqualTo(0),
+                () -> assertThat(lines(rolledBack)).isEqualTo(List.of(1L, 2L)),
+                () -> assertThat(userStorage.getAll().size()).isEqualTo(2)
+        );
+    }
+
+    private void addFriend(Long id, Long friendId) {
+        friendshipRepository.save(Friendship.builder()
+                .id(id)
+                .friendId(friendId)
+                .status("неподтвержденная")
+                .build());
+    }
+
+    private InputStream ndjson(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<Long> lines(ImportResult result) {
+        return result.getErrors().stream()
+                .map(ImportError::getLine)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private String eTag(String path) throws Exception {
+        return mockMvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader("ETag");
+    }
+
     private User buildUser() {
         return User.builder()
                 .login("dolore")